@@ -15,6 +15,7 @@ import java.io.FilenameFilter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
+import java.util.function.LongConsumer;
 
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
@@ -420,11 +421,29 @@ public class CefApp extends CefAppHandlerAdapter {
     }
 
     /**
-     * Perform a single message loop iteration. Used on all platforms except
-     * Windows with windowed rendering.
+     * Receives the delays passed to onScheduleMessagePumpWork, so that the host application can decide
+     * when to call N_DoMessageLoopWork. May be invoked on any thread.
+     */
+    private volatile LongConsumer messagePumpScheduler_ = null;
+
+    /**
+     * Sets who receives the delays passed to onScheduleMessagePumpWork, see
+     * {@link #doMessageLoopWork(long)}.
+     * @param scheduler Called with the delay in milliseconds, or null to stop forwarding.
+     */
+    public final void setMessagePumpScheduler(LongConsumer scheduler) {
+        messagePumpScheduler_ = scheduler;
+    }
+
+    /**
+     * Schedules a message loop iteration in delay_ms milliseconds through
+     * {@link #setMessagePumpScheduler(LongConsumer) the message pump scheduler}. Used on all platforms except Windows with
+     * windowed rendering.
      */
     public final void doMessageLoopWork(final long delay_ms) {
-        // Do nothing, handled by custom game tick loop
+        // The message loop itself is driven by the host application, only forward the schedule
+        LongConsumer scheduler = messagePumpScheduler_;
+        if (scheduler != null) scheduler.accept(delay_ms);
     }
 
     /**
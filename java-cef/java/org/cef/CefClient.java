@@ -37,6 +37,7 @@ import java.awt.Rectangle;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Vector;
@@ -815,7 +816,7 @@ public class CefClient extends CefClientHandler
     }
     
     @Override
-    public void onAudioStreamPacket(CefBrowser browser, float[] data, int frames, long pts) {
+    public void onAudioStreamPacket(CefBrowser browser, FloatBuffer data, int frames, long pts) {
         if (audioHandler_ != null) audioHandler_.onAudioStreamPacket(browser, data, frames, pts);
     }
     
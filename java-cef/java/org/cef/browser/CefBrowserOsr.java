@@ -27,7 +27,7 @@ public class CefBrowserOsr extends CefBrowser_N implements CefRenderHandler {
     private boolean justCreated_ = false;
     protected Rectangle browser_rect_ = new Rectangle(0, 0, 1, 1); // Work around CEF issue #1437.
     private Point screenPoint_ = new Point(0, 0);
-    private double scaleFactor_ = 1.0;
+    private volatile double scaleFactor_ = 1.0;
     private int depth = 32;
     private int depth_per_component = 8;
     private boolean isTransparent_;
@@ -124,6 +124,36 @@ public class CefBrowserOsr extends CefBrowser_N implements CefRenderHandler {
     public void updateDragCursor(CefBrowser browser, int operation) {
     }
 
+    /**
+     * Creates the native browser again after it was closed, starting at the given URL.
+     * Browsers with their own request context can't be recreated, it is disposed on close.
+     *
+     * @return false if the browser isn't closed, still holds its native browser or can't be recreated
+     */
+    protected boolean recreate(String url) {
+        // The native browser is only let go of right after onBeforeClose
+        if (!isClosed() || getNativeRef("CefBrowser") != 0) return false;
+        if (getParentBrowser() != null || getRequestContext() != null) return false;
+        resetClosed();
+        createBrowser(getClient(), 0, url, true, isTransparent_, null);
+        return true;
+    }
+
+    public double getScaleFactor() {
+        return scaleFactor_;
+    }
+
+    /**
+     * Sets the device scale factor reported to CEF. The view rect stays in device independent pixels,
+     * so the page keeps its layout while being painted at the view size times the scale factor.
+     * Paints are then in physical pixels, while popup bounds, view and input coordinates are not.
+     */
+    protected void setScaleFactor(double scaleFactor) {
+        if (scaleFactor == scaleFactor_) return;
+        scaleFactor_ = scaleFactor;
+        if (getNativeRef("CefBrowser") != 0) notifyScreenInfoChanged();
+    }
+
     private void createBrowserIfRequired(boolean hasParent) {
         long windowHandle = 0;
         if (getNativeRef("CefBrowser") == 0) {
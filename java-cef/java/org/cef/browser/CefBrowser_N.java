@@ -150,6 +150,17 @@ public abstract class CefBrowser_N extends CefNativeAdapter implements CefBrowse
         }
     }
 
+    /**
+     * Allows the browser to be created again once it has been closed, for browsers that are
+     * closed to free resources and brought back later. Must only be called after onBeforeClose.
+     */
+    protected synchronized void resetClosed() {
+        if (!isClosed_) return;
+        isPending_ = false;
+        isClosing_ = false;
+        isClosed_ = false;
+    }
+
     /**
      * Called async from the (native) main UI thread.
      */
@@ -578,6 +589,44 @@ public abstract class CefBrowser_N extends CefNativeAdapter implements CefBrowse
         }
     }
 
+    /**
+     * Notify the browser that it has been hidden or shown. Hidden off-screen browsers stop
+     * painting and have their timers throttled.
+     * @param hidden True if the browser was hidden.
+     */
+    protected final void wasHidden(boolean hidden) {
+        try {
+            N_WasHidden(hidden);
+        } catch (UnsatisfiedLinkError ule) {
+            ule.printStackTrace();
+        }
+    }
+
+    /**
+     * Set the maximum rate in frames per second at which an off-screen browser paints.
+     * The actual rate may be lower if the browser can't keep up.
+     * @param frameRate The maximum frame rate, clamped by CEF to the range 1 to 60.
+     */
+    protected final void setWindowlessFrameRate(int frameRate) {
+        try {
+            N_SetWindowlessFrameRate(frameRate);
+        } catch (UnsatisfiedLinkError ule) {
+            ule.printStackTrace();
+        }
+    }
+
+    /**
+     * Notify the browser that the screen info it got from getScreenInfo changed, e.g. the device
+     * scale factor. An off-screen browser then repaints at the new scale.
+     */
+    protected final void notifyScreenInfoChanged() {
+        try {
+            N_NotifyScreenInfoChanged();
+        } catch (UnsatisfiedLinkError ule) {
+            ule.printStackTrace();
+        }
+    }
+
     /**
      * Send a key event.
      * @param e The event to send.
@@ -778,6 +827,9 @@ public abstract class CefBrowser_N extends CefNativeAdapter implements CefBrowse
     private final native void N_ReplaceMisspelling(String word);
     private final native void N_WasResized(int width, int height);
     private final native void N_Invalidate();
+    private final native void N_WasHidden(boolean hidden);
+    private final native void N_SetWindowlessFrameRate(int frameRate);
+    private final native void N_NotifyScreenInfoChanged();
     private final native void N_SendKeyEvent(CefKeyEvent e);
     private final native void N_SendMouseEvent(CefMouseEvent e);
     private final native void N_SendMouseWheelEvent(CefMouseWheelEvent e);
@@ -7,6 +7,8 @@ package org.cef.handler;
 import org.cef.browser.CefBrowser;
 import org.cef.misc.CefAudioParameters;
 
+import java.nio.FloatBuffer;
+
 /**
  * Implement this interface to handle events related to audio playing.
  * The methods of this class will be called on the UI thread.
@@ -16,7 +18,17 @@ public interface CefAudioHandler {
 	
 	void onAudioStreamStarted(CefBrowser browser, CefAudioParameters params, int channels);
 	
-	void onAudioStreamPacket(CefBrowser browser, float[] data, int frames, long pts);
+	/**
+	 * Called for every packet of PCM audio.
+	 *
+	 * @param data   the samples of every channel, interleaved, starting at index 0. The buffer is direct and reused
+	 *               for every packet of the stream, it must not be kept or read from after this returns.
+	 *               It may hold more than {@code frames * channels} samples.
+	 * @param frames the amount of frames in the packet, each holding a sample per channel
+	 *               given to {@link #onAudioStreamStarted(CefBrowser, CefAudioParameters, int)}
+	 * @param pts    the presentation timestamp, in milliseconds since the epoch
+	 */
+	void onAudioStreamPacket(CefBrowser browser, FloatBuffer data, int frames, long pts);
 	
 	void onAudioStreamStopped(CefBrowser browser);
 	
@@ -7,6 +7,8 @@ package org.cef.handler;
 import org.cef.browser.CefBrowser;
 import org.cef.misc.CefAudioParameters;
 
+import java.nio.FloatBuffer;
+
 /**
  * Implement this interface to handle events related to audio playing.
  * The methods of this class will be called on the UI thread.
@@ -19,7 +21,7 @@ public abstract class CefAudioHandlerAdapter implements CefAudioHandler {
 	public void onAudioStreamStarted(CefBrowser browser, CefAudioParameters params, int channels) {
 	}
 	
-	public void onAudioStreamPacket(CefBrowser browser, float[] data, int frames, long pts) {
+	public void onAudioStreamPacket(CefBrowser browser, FloatBuffer data, int frames, long pts) {
 	}
 	
 	public 	void onAudioStreamStopped(CefBrowser browser) {
@@ -0,0 +1,37 @@
+// Copyright (c) 2014 The Chromium Embedded Framework Authors. All rights
+// reserved. Use of this source code is governed by a BSD-style license that
+// can be found in the LICENSE file.
+
+package org.cef.handler;
+
+import org.cef.callback.CefCallback;
+import org.cef.misc.IntRef;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A resource handler whose response data is written straight into CEF's output memory. Implementing this
+ * interface opts in; the native side then calls {@link #readResponse(ByteBuffer, int, IntRef, CefCallback)}
+ * instead of the byte[] variant, which saves allocating an array and copying it back for every read.
+ */
+public interface CefDirectResourceHandler extends CefResourceHandler {
+    /**
+     * Read response data, like {@link #readResponse(byte[], int, IntRef, CefCallback)}.
+     * @param dataOut A direct buffer over CEF's output memory, with its position at 0 and its limit at
+     *         |bytesToRead|. Only valid within the scope of this method.
+     * @param bytesToRead Size of the buffer.
+     * @param bytesRead Number of bytes written to the buffer.
+     * @param callback Callback to execute if data will be available asynchronously.
+     * @return True if more data is or will be available.
+     */
+    boolean readResponse(ByteBuffer dataOut, int bytesToRead, IntRef bytesRead, CefCallback callback);
+
+    /**
+     * Never called by the native side for direct handlers, only kept working for Java callers.
+     */
+    @Override
+    default boolean readResponse(byte[] dataOut, int bytesToRead, IntRef bytesRead, CefCallback callback) {
+        ByteBuffer buffer = ByteBuffer.wrap(dataOut, 0, bytesToRead);
+        return readResponse(buffer, bytesToRead, bytesRead, callback);
+    }
+}
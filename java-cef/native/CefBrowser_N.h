@@ -399,6 +399,33 @@ JNIEXPORT void JNICALL Java_org_cef_browser_CefBrowser_1N_N_1WasResized(JNIEnv*,
 JNIEXPORT void JNICALL
 Java_org_cef_browser_CefBrowser_1N_N_1Invalidate(JNIEnv*, jobject);
 
+/*
+ * Class:     org_cef_browser_CefBrowser_N
+ * Method:    N_WasHidden
+ * Signature: (Z)V
+ */
+JNIEXPORT void JNICALL
+Java_org_cef_browser_CefBrowser_1N_N_1WasHidden(JNIEnv*, jobject, jboolean);
+
+/*
+ * Class:     org_cef_browser_CefBrowser_N
+ * Method:    N_SetWindowlessFrameRate
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL
+Java_org_cef_browser_CefBrowser_1N_N_1SetWindowlessFrameRate(JNIEnv*,
+                                                             jobject,
+                                                             jint);
+
+/*
+ * Class:     org_cef_browser_CefBrowser_N
+ * Method:    N_NotifyScreenInfoChanged
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL
+Java_org_cef_browser_CefBrowser_1N_N_1NotifyScreenInfoChanged(JNIEnv*,
+                                                              jobject);
+
 /*
  * Class:     org_cef_browser_CefBrowser_N
  * Method:    N_SendKeyEvent
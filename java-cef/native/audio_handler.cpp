@@ -6,37 +6,105 @@
 
 #include "jni_util.h"
 
-//#include <iostream>
+namespace {
 
-AudioHandler::AudioHandler(JNIEnv* env, jobject handler)
-    : handle_(env, handler) {}
+jobject NewJNIAudioParameters(JNIEnv* env, const CefAudioParameters& params) {
+  ScopedJNIClass layoutCls(env, "org/cef/misc/CefChannelLayout");
+  if (!layoutCls)
+    return nullptr;
+  jmethodID forId = env->GetStaticMethodID(
+      layoutCls, "forId", "(I)Lorg/cef/misc/CefChannelLayout;");
+  if (!forId)
+    return nullptr;
+  ScopedJNIObjectLocal layout(
+      env, env->CallStaticObjectMethod(layoutCls, forId,
+                                       (jint)params.channel_layout));
 
-jobject jniParams(ScopedJNIEnv env, const CefAudioParameters& params) {
-  jclass cls = env->FindClass("org/cef/misc/CefChannelLayout");
-  if (cls == nullptr) {
-//    std::cout << "Could not find class 0";
+  ScopedJNIClass paramsCls(env, "org/cef/misc/CefAudioParameters");
+  if (!paramsCls)
     return nullptr;
-  }
-  jmethodID getLayout = env->GetStaticMethodID(cls, "forId", "(I)Lorg/cef/misc/CefChannelLayout;");
-  if (getLayout == 0) {
-//    std::cout << "Could not find method 0";
+  jmethodID constructor = env->GetMethodID(
+      paramsCls, "<init>", "(Lorg/cef/misc/CefChannelLayout;II)V");
+  if (!constructor)
     return nullptr;
-  }
-  jobject layout = env->CallStaticObjectMethod(cls, getLayout, (int) params.channel_layout);
+  return env->NewObject(paramsCls, constructor, layout.get(),
+                        params.sample_rate, params.frames_per_buffer);
+}
 
-  cls = env->FindClass("org/cef/misc/CefAudioParameters");
-  if (cls == nullptr) {
-//    std::cout << "Could not find class 1";
+// Wraps |data| in a direct FloatBuffer using the native byte order.
+jobject NewJNIFloatBuffer(JNIEnv* env, float* data, size_t size) {
+  ScopedJNIObjectLocal bytes(
+      env, env->NewDirectByteBuffer(data, size * sizeof(float)));
+  if (!bytes)
     return nullptr;
+
+  ScopedJNIClass orderCls(env, "java/nio/ByteOrder");
+  jmethodID nativeOrder = env->GetStaticMethodID(orderCls, "nativeOrder",
+                                                 "()Ljava/nio/ByteOrder;");
+  ScopedJNIObjectLocal order(env,
+                             env->CallStaticObjectMethod(orderCls, nativeOrder));
+
+  ScopedJNIObjectResult ordered(env);
+  JNI_CALL_METHOD(env, bytes.get(), "order",
+                  "(Ljava/nio/ByteOrder;)Ljava/nio/ByteBuffer;", Object,
+                  ordered, order.get());
+  jobject floats = nullptr;
+  JNI_CALL_METHOD(env, ordered.get(), "asFloatBuffer", "()Ljava/nio/FloatBuffer;",
+                  Object, floats);
+  return floats;
+}
+
+}  // namespace
+
+AudioHandler::AudioHandler(JNIEnv* env, jobject handler)
+    : handle_(env, handler) {}
+
+AudioHandler::~AudioHandler() {
+  ScopedJNIEnv env;
+  base::AutoLock lock_scope(streams_lock_);
+  for (auto& stream : streams_) {
+    if (env && stream.second.buffer)
+      env->DeleteGlobalRef(stream.second.buffer);
   }
-  jmethodID constructor = env->GetMethodID(cls, "<init>", "(Lorg/cef/misc/CefChannelLayout;II)V");
-  if (constructor == 0) {
-//    std::cout << "Could not find constructor 1";
+  streams_.clear();
+}
+
+jobject AudioHandler::GetBuffer(JNIEnv* env,
+                                int browser_id,
+                                int frames,
+                                float** data,
+                                int* channels) {
+  base::AutoLock lock_scope(streams_lock_);
+  auto it = streams_.find(browser_id);
+  if (it == streams_.end())
     return nullptr;
+  Stream& stream = it->second;
+  size_t size = (size_t)frames * stream.channels;
+  if (stream.samples.size() < size || !stream.buffer) {
+    if (stream.buffer) {
+      env->DeleteGlobalRef(stream.buffer);
+      stream.buffer = nullptr;
+    }
+    stream.samples.resize(size);
+    ScopedJNIObjectLocal buffer(
+        env, NewJNIFloatBuffer(env, stream.samples.data(), size));
+    if (!buffer)
+      return nullptr;
+    stream.buffer = env->NewGlobalRef(buffer);
   }
-  jobject parameters = env->NewObject(cls, constructor, layout, params.sample_rate, params.frames_per_buffer);
+  *data = stream.samples.data();
+  *channels = stream.channels;
+  return stream.buffer;
+}
 
-  return parameters;
+void AudioHandler::ReleaseStream(JNIEnv* env, int browser_id) {
+  base::AutoLock lock_scope(streams_lock_);
+  auto it = streams_.find(browser_id);
+  if (it == streams_.end())
+    return;
+  if (it->second.buffer)
+    env->DeleteGlobalRef(it->second.buffer);
+  streams_.erase(it);
 }
 
 bool AudioHandler::GetAudioParameters(CefRefPtr<CefBrowser> browser,
@@ -46,12 +114,13 @@ bool AudioHandler::GetAudioParameters(CefRefPtr<CefBrowser> browser,
     return true;
 
   ScopedJNIBrowser jbrowser(env, browser);
+  ScopedJNIObjectLocal jparams(env, NewJNIAudioParameters(env, params));
 
   jboolean jreturn = JNI_FALSE;
 
   JNI_CALL_METHOD(env, handle_, "getAudioParameters",
                        "(Lorg/cef/browser/CefBrowser;Lorg/cef/misc/CefAudioParameters;)Z", Boolean,
-                       jreturn, jbrowser.get(), jniParams(env, params));
+                       jreturn, jbrowser.get(), jparams.get());
 
   return (jreturn != JNI_FALSE);
 }
@@ -62,11 +131,20 @@ void AudioHandler::OnAudioStreamStarted(CefRefPtr<CefBrowser> browser,
   if (!env)
     return;
 
+  {
+    base::AutoLock lock_scope(streams_lock_);
+    Stream& stream = streams_[browser->GetIdentifier()];
+    stream.channels = channels;
+    // Allocated for the expected packet size up front, grown if ever needed.
+    stream.samples.reserve((size_t)params.frames_per_buffer * channels);
+  }
+
   ScopedJNIBrowser jbrowser(env, browser);
+  ScopedJNIObjectLocal jparams(env, NewJNIAudioParameters(env, params));
 
   JNI_CALL_VOID_METHOD(env, handle_, "onAudioStreamStarted",
                        "(Lorg/cef/browser/CefBrowser;Lorg/cef/misc/CefAudioParameters;I)V",
-                       jbrowser.get(), nullptr, channels);
+                       jbrowser.get(), jparams.get(), channels);
 }
 
 void AudioHandler::OnAudioStreamPacket(CefRefPtr<CefBrowser> browser, const float** data, int frames, int64_t pts) {
@@ -74,19 +152,26 @@ void AudioHandler::OnAudioStreamPacket(CefRefPtr<CefBrowser> browser, const floa
   if (!env)
     return;
 
-  ScopedJNIBrowser jbrowser(env, browser);
+  float* samples = nullptr;
+  int channels = 0;
+  jobject jbuffer =
+      GetBuffer(env, browser->GetIdentifier(), frames, &samples, &channels);
+  if (!jbuffer)
+    return;
 
-  // TODO: this should truthfully be using a float buffer, but I'm not yet sure how to do that from JNI
-  jfloatArray jArray = env->NewFloatArray(frames);
-  int size = frames;
-  jfloat* fill = (jfloat*) malloc(size * sizeof(jfloat));
-  for (int i = 0; i < size; i++)
-    fill[i] = data[0][i];
-  env->SetFloatArrayRegion(jArray, 0, size, fill);
+  // CEF hands out one plane per channel, Java gets them interleaved.
+  for (int channel = 0; channel < channels; channel++) {
+    const float* plane = data[channel];
+    float* out = samples + channel;
+    for (int i = 0; i < frames; i++, out += channels)
+      *out = plane[i];
+  }
+
+  ScopedJNIBrowser jbrowser(env, browser);
 
   JNI_CALL_VOID_METHOD(env, handle_, "onAudioStreamPacket",
-                  "(Lorg/cef/browser/CefBrowser;[FIJ)V",
-                  jbrowser.get(), jArray, frames, (long long) pts);
+                  "(Lorg/cef/browser/CefBrowser;Ljava/nio/FloatBuffer;IJ)V",
+                  jbrowser.get(), jbuffer, frames, (jlong) pts);
 }
 
 void AudioHandler::OnAudioStreamStopped(CefRefPtr<CefBrowser> browser) {
@@ -94,6 +179,8 @@ void AudioHandler::OnAudioStreamStopped(CefRefPtr<CefBrowser> browser) {
   if (!env)
     return;
 
+  ReleaseStream(env, browser->GetIdentifier());
+
   ScopedJNIBrowser jbrowser(env, browser);
 
   JNI_CALL_VOID_METHOD(env, handle_, "onAudioStreamStopped",
@@ -107,6 +194,8 @@ void AudioHandler::OnAudioStreamError(CefRefPtr<CefBrowser> browser,
   if (!env)
     return;
 
+  ReleaseStream(env, browser->GetIdentifier());
+
   ScopedJNIBrowser jbrowser(env, browser);
   ScopedJNIString jtext(env, text);
 
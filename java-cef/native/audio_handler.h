@@ -8,6 +8,10 @@
 
 #include <jni.h>
 
+#include <map>
+#include <vector>
+
+#include "include/base/cef_lock.h"
 #include "include/cef_audio_handler.h"
 
 #include "jni_scoped_helpers.h"
@@ -17,6 +21,7 @@
 class AudioHandler : public CefAudioHandler {
  public:
   AudioHandler(JNIEnv* env, jobject handler);
+  ~AudioHandler() override;
 
   // CefAudioHandler methods:
   bool GetAudioParameters(CefRefPtr<CefBrowser> browser,
@@ -28,8 +33,27 @@ class AudioHandler : public CefAudioHandler {
   void OnAudioStreamError(CefRefPtr<CefBrowser> browser, const CefString& text) override;
 
  protected:
+  // Interleaved samples of a stream, shared with Java through a direct
+  // FloatBuffer that is reused for every packet.
+  struct Stream {
+    int channels = 0;
+    std::vector<float> samples;
+    jobject buffer = nullptr;  // Global reference.
+  };
+
+  // Returns the buffer of a browser's stream, replacing it if it can't hold
+  // |frames| frames. Returns nullptr if the stream wasn't started.
+  jobject GetBuffer(JNIEnv* env, int browser_id, int frames, float** data,
+                    int* channels);
+  void ReleaseStream(JNIEnv* env, int browser_id);
+
   ScopedJNIObjectGlobal handle_;
 
+  // Streams by browser identifier. Packets of a stream all arrive on the same
+  // thread, but different browsers may use different threads.
+  base::Lock streams_lock_;
+  std::map<int, Stream> streams_;
+
   // Include the default reference counting implementation.
   IMPLEMENT_REFCOUNTING(AudioHandler);
 };
@@ -30,8 +30,19 @@ class ResourceHandler : public CefResourceHandler {
   void Cancel() override;
 
  protected:
+  bool ReadResponseDirect(JNIEnv* env,
+                          void* data_out,
+                          int bytes_to_read,
+                          int& bytes_read,
+                          CefRefPtr<CefCallback> callback);
+
   ScopedJNIObjectGlobal handle_;
 
+  // True if the handler implements CefDirectResourceHandler, in which case
+  // response data is written straight into |data_out| through a direct
+  // ByteBuffer instead of being copied out of a byte[].
+  bool direct_;
+
   // Include the default reference counting implementation.
   IMPLEMENT_REFCOUNTING(ResourceHandler);
 };
@@ -0,0 +1,95 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MCEFPixelCopy} with the row by row loop {@link MCEFBrowser#store} used before it,
+ * on direct buffers like the ones paints are copied between.
+ * <p>
+ * {@code FULL} copies the whole frame, which takes the contiguous path and the fork/join path from 1080p up.
+ * {@code INSET} leaves out an eighth of the frame on every side, which takes the strided path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MCEFPixelCopyBenchmark {
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"FULL", "INSET"})
+    public String rect;
+
+    private int width;
+    private ByteBuffer src;
+    private ByteBuffer dst;
+    private Rectangle dirty;
+
+    @Setup
+    public void setup() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        src = MemoryUtil.memAlloc(width * height * 4);
+        dst = MemoryUtil.memAlloc(width * height * 4);
+        for (int i = 0; i < src.capacity(); i += 4)
+            src.putInt(i, i * 31);
+
+        dirty = rect.equals("FULL")
+                ? new Rectangle(0, 0, width, height)
+                : new Rectangle(width / 8, height / 8, width - width / 4, height - height / 4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtil.memFree(src);
+        MemoryUtil.memFree(dst);
+    }
+
+    @Benchmark
+    public ByteBuffer legacyStore() {
+        for (int y = dirty.y; y < dirty.height + dirty.y; y++) {
+            dst.position((y * width + dirty.x) * 4);
+            src.position((y * width + dirty.x) * 4);
+            src.limit(dirty.width * 4 + (y * width + dirty.x) * 4);
+            dst.put(src);
+            src.position(0).limit(src.capacity());
+        }
+        dst.position(0).limit(dst.capacity());
+        return dst;
+    }
+
+    @Benchmark
+    public ByteBuffer pixelCopy() {
+        MCEFPixelCopy.copy(src, dst, dirty, width);
+        return dst;
+    }
+}
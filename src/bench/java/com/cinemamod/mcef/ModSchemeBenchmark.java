@@ -0,0 +1,140 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import org.cef.misc.IntRef;
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Streams a 50MB resource out of a mod jar through {@link ModScheme}, the way CEF reads a large video, comparing
+ * the direct {@link ByteBuffer} path with the byte[] one it replaced. Both do what their native side does per read:
+ * <ul>
+ *     <li>{@code byteArray} allocates a new array for every read and copies it into the output memory afterwards,
+ *     like {@code NewByteArray} and the {@code memmove} in {@code ResourceHandler::ReadResponse}</li>
+ *     <li>{@code direct} wraps the output memory in a new direct buffer for every read, like
+ *     {@code NewDirectByteBuffer} in {@code ResourceHandler::ReadResponseDirect}</li>
+ * </ul>
+ * The byte[] handler is the streaming part of {@link ModScheme} as it was before it went direct.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModSchemeBenchmark {
+    private static final int RESOURCE_SIZE = 50 * 1024 * 1024;
+    private static final String ENTRY = "assets/bench/html/video.webm";
+
+    /**
+     * The amount of bytes CEF asks for per read.
+     */
+    @Param({"16384", "65536"})
+    public int readSize;
+
+    private Path jarPath;
+    private JarFile jar;
+    private ByteBuffer output;
+    private Field stream;
+
+    @Setup
+    public void setup() throws IOException, ReflectiveOperationException {
+        // Random bytes don't deflate, like video
+        byte[] data = new byte[RESOURCE_SIZE];
+        new Random(0).nextBytes(data);
+        jarPath = Files.createTempFile("mcef-bench", ".jar");
+        try (OutputStream out = Files.newOutputStream(jarPath); JarOutputStream jarOut = new JarOutputStream(out)) {
+            jarOut.putNextEntry(new JarEntry(ENTRY));
+            jarOut.write(data);
+            jarOut.closeEntry();
+        }
+        jar = new JarFile(jarPath.toFile());
+
+        output = MemoryUtil.memAlloc(readSize);
+        // Streams are only opened by processRequest, which needs MCEF to be running
+        stream = ModScheme.class.getDeclaredField("is");
+        stream.setAccessible(true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        MemoryUtil.memFree(output);
+        jar.close();
+        Files.delete(jarPath);
+    }
+
+    @Benchmark
+    public long byteArray() throws IOException {
+        IntRef bytesRead = new IntRef();
+        long total = 0;
+        try (InputStream is = open()) {
+            while (true) {
+                byte[] out = new byte[readSize];
+                if (!readResponse(is, out, readSize, bytesRead)) break;
+                output.clear();
+                output.put(out, 0, bytesRead.get());
+                total += bytesRead.get();
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long direct() throws IOException, IllegalAccessException {
+        ModScheme scheme = new ModScheme("mod://bench/video.webm");
+        stream.set(scheme, open());
+        IntRef bytesRead = new IntRef();
+        long total = 0;
+        long address = MemoryUtil.memAddress(output);
+        while (scheme.readResponse(MemoryUtil.memByteBuffer(address, readSize), readSize, bytesRead, null))
+            total += bytesRead.get();
+        scheme.cancel();
+        return total;
+    }
+
+    private InputStream open() throws IOException {
+        return jar.getInputStream(jar.getJarEntry(ENTRY));
+    }
+
+    private static boolean readResponse(InputStream is, byte[] output, int bytesToRead, IntRef bytesRead) throws IOException {
+        int ret = is.read(output, 0, bytesToRead);
+        if (ret <= 0) {
+            bytesRead.set(0);
+            return false;
+        }
+        bytesRead.set(ret);
+        return true;
+    }
+}
@@ -43,8 +43,25 @@ public final class MCEF {
     private static MCEFSettings settings;
     private static MCEFApp app;
     private static MCEFClient client;
+    private static MCEFMessagePump messagePump;
+    private static MCEFBrowserPool browserPool;
+    private static MCEFLifecycleManager lifecycleManager;
+    private static MCEFUploadScheduler uploadScheduler;
+    private static MCEFScreenshots screenshots;
+    private static MCEFMemoryBudget memoryBudget;
+    private static MCEFAudio audio;
+    private static MCEFAssetCache assetCache;
+    private static MCEFResourceIndex resourceIndex;
 
     private static final ArrayList<MCEFInitListener> awaitingInit = new ArrayList<>();
+    /**
+     * Every browser that hasn't been closed yet. Weakly referenced, so browsers that are never closed can
+     * still be garbage collected. Only accessed from the render thread.
+     */
+    private static final Set<MCEFBrowser> browsers = Collections.newSetFromMap(new WeakHashMap<>());
+    private static long renderFrame = 0;
+    private static long frameStart = 0;
+    private static long lastFrameNanos = 0;
 
     public static void scheduleForInit(MCEFInitListener task) {
         awaitingInit.add(task);
@@ -76,9 +93,19 @@ public final class MCEF {
      */
     public static boolean initialize() {
         MCEF.getLogger().info("Initializing CEF on " + MCEFPlatform.getPlatform().getNormalizedName() + "...");
-        if (CefUtil.init()) {
+        messagePump = new MCEFMessagePump(getSettings().isUsingDedicatedPumpThread());
+        if (messagePump.runOnPumpThread(CefUtil::init)) {
+            CefUtil.getCefApp().setMessagePumpScheduler(messagePump::scheduleWork);
             app = new MCEFApp(CefUtil.getCefApp());
             client = new MCEFClient(CefUtil.getCefClient());
+            browserPool = new MCEFBrowserPool();
+            lifecycleManager = new MCEFLifecycleManager();
+            uploadScheduler = new MCEFUploadScheduler();
+            screenshots = new MCEFScreenshots();
+            memoryBudget = new MCEFMemoryBudget();
+            audio = new MCEFAudio();
+            assetCache = new MCEFAssetCache();
+            resourceIndex = new MCEFResourceIndex();
 
             awaitingInit.forEach(t -> t.onInit(true));
             awaitingInit.clear();
@@ -106,10 +133,144 @@ public final class MCEF {
         awaitingInit.forEach(t -> t.onInit(false));
         awaitingInit.clear();
         MCEF.getLogger().info("Could not initialize Chromium Embedded Framework");
+        messagePump.stop();
         shutdown();
         return false;
     }
 
+    /**
+     * This gets called by {@link com.cinemamod.mcef.mixins.CefRenderUpdateMixin} at the start of every frame.
+     * This should not be called by anything else.
+     */
+    public static void onRender() {
+        renderFrame++;
+        long now = System.nanoTime();
+        if (frameStart != 0) lastFrameNanos = now - frameStart;
+        frameStart = now;
+        if (!isInitialized()) return;
+
+        messagePump.onRender();
+        MCEFResourceTracker.poll();
+        uploadScheduler.onRender(renderFrame);
+        screenshots.onRender();
+        browserPool.onRender(renderFrame);
+
+        for (MCEFBrowser browser : new ArrayList<>(browsers))
+            browser.onRenderFrame(renderFrame);
+        lifecycleManager.onRender(renderFrame);
+        memoryBudget.onRender(renderFrame);
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFMessagePump} driving CEF's message loop
+     */
+    public static MCEFMessagePump getMessagePump() {
+        assertInitialized();
+        return messagePump;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFBrowserPool} serving {@link #createBrowser} calls
+     */
+    public static MCEFBrowserPool getBrowserPool() {
+        assertInitialized();
+        return browserPool;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFLifecycleManager} hibernating browsers
+     */
+    public static MCEFLifecycleManager getLifecycleManager() {
+        assertInitialized();
+        return lifecycleManager;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFUploadScheduler} spreading texture uploads over frames
+     */
+    public static MCEFUploadScheduler getUploadScheduler() {
+        assertInitialized();
+        return uploadScheduler;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFScreenshots} taking browser screenshots
+     */
+    public static MCEFScreenshots getScreenshots() {
+        assertInitialized();
+        return screenshots;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFMemoryBudget} keeping browsers within the memory budget
+     */
+    public static MCEFMemoryBudget getMemoryBudget() {
+        assertInitialized();
+        return memoryBudget;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFAudio} playing captured browser audio
+     */
+    public static MCEFAudio getAudio() {
+        assertInitialized();
+        return audio;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFAssetCache} of assets served through {@code mod://} URLs
+     */
+    public static MCEFAssetCache getAssetCache() {
+        assertInitialized();
+        return assetCache;
+    }
+
+    /**
+     * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
+     * @return the {@link MCEFResourceIndex} resolving {@code mod://} URLs
+     */
+    public static MCEFResourceIndex getResourceIndex() {
+        assertInitialized();
+        return resourceIndex;
+    }
+
+    /**
+     * @return the amount of frames rendered since the game started
+     */
+    public static long getRenderFrame() {
+        return renderFrame;
+    }
+
+    /**
+     * @return the time between the start of the last two frames, in nanoseconds
+     */
+    public static long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    /**
+     * @return a snapshot of every browser that hasn't been closed yet, including idle ones in the {@link MCEFBrowserPool}
+     */
+    public static List<MCEFBrowser> getBrowsers() {
+        return new ArrayList<>(browsers);
+    }
+
+    static void trackBrowser(MCEFBrowser browser) {
+        browsers.add(browser);
+    }
+
+    static void untrackBrowser(MCEFBrowser browser) {
+        browsers.remove(browser);
+    }
+
     /**
      * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
      * @return the {@link MCEFApp} instance
@@ -131,13 +292,18 @@ public final class MCEF {
     /**
      * Will assert that MCEF has been initialized; throws a {@link RuntimeException} if not.
      * Creates a new Chromium web browser with some starting URL. Can set it to be transparent rendering.
+     * The browser is taken from the {@link MCEFBrowserPool} when it has an idle one, see {@link MCEFBrowser#release()}.
      * @return the {@link MCEFBrowser} web browser instance
      */
     public static MCEFBrowser createBrowser(String url, boolean transparent) {
         assertInitialized();
-        MCEFBrowser browser = new MCEFBrowser(client, url, transparent);
+        MCEFBrowser browser = browserPool.acquire(url, transparent);
+        if (browser != null) return browser;
+
+        browser = new MCEFBrowser(client, url, transparent);
         browser.setCloseAllowed();
         browser.createImmediately();
+        browserPool.onMiss(browser);
         return browser;
     }
 
@@ -148,10 +314,7 @@ public final class MCEF {
      * @return the {@link MCEFBrowser} web browser instance
      */
     public static MCEFBrowser createBrowser(String url, boolean transparent, int width, int height) {
-        assertInitialized();
-        MCEFBrowser browser = new MCEFBrowser(client, url, transparent);
-        browser.setCloseAllowed();
-        browser.createImmediately();
+        MCEFBrowser browser = createBrowser(url, transparent);
         browser.resize(width, height);
         return browser;
     }
@@ -169,7 +332,17 @@ public final class MCEF {
      */
     public static void shutdown() {
         if (isInitialized()) {
-            CefUtil.shutdown();
+            browserPool.clear();
+            screenshots.shutdown();
+            audio.shutdown();
+            resourceIndex.shutdown();
+            if (MCEFResourceTracker.getTrackedBrowsers() > 0 || MCEFResourceTracker.getLeakCount() > 0)
+                MCEF.getLogger().warn("Browsers were not closed before shutdown\n" + MCEFResourceTracker.getLeakReport());
+            messagePump.runOnPumpThread(() -> {
+                CefUtil.shutdown();
+                return null;
+            });
+            messagePump.stop();
             client = null;
             app = null;
         }
@@ -0,0 +1,223 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of the assets served through {@code mod://} URLs, see {@link ModScheme}.
+ * <p>
+ * Assets are kept with their MIME type, length and a strong ETag computed from their contents, so a cached asset is
+ * served without touching the mod jar, and a browser revalidating it with {@code If-None-Match} gets a 304.
+ * The cache holds at most {@link MCEFSettings#getAssetCacheMegabytes()}, assets bigger than a quarter of that are
+ * never cached and are streamed from the jar instead.
+ */
+public final class MCEFAssetCache {
+    private final LinkedHashMap<String, Asset> assets = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long notModified = 0;
+
+    MCEFAssetCache() {
+    }
+
+    public synchronized int getEntries() {
+        return assets.size();
+    }
+
+    /**
+     * @return the combined size of the cached assets, in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, between 0 and 1
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return the amount of assets dropped to make room for others
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the amount of requests answered with 304 Not Modified
+     */
+    public synchronized long getNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Drops every cached asset, for when resources may have changed.
+     */
+    public synchronized void invalidate() {
+        assets.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @param path the path of the asset within the mod jars
+     * @return the cached asset, or null if it isn't cached
+     */
+    synchronized Asset get(String path) {
+        Asset asset = assets.get(path);
+        if (asset != null) hits++;
+        else misses++;
+        return asset;
+    }
+
+    /**
+     * @return whether an asset of the given size would be cached
+     */
+    boolean accepts(long length) {
+        long maxBytes = getMaxBytes();
+        return maxBytes > 0 && length <= maxBytes / 4;
+    }
+
+    synchronized void put(String path, Asset asset) {
+        if (!accepts(asset.data.length)) return;
+        Asset previous = assets.put(path, asset);
+        if (previous != null) bytes -= previous.data.length;
+        bytes += asset.data.length;
+
+        long maxBytes = getMaxBytes();
+        Iterator<Map.Entry<String, Asset>> iterator = assets.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Asset eldest = iterator.next().getValue();
+            if (eldest == asset) continue;
+            iterator.remove();
+            bytes -= eldest.data.length;
+            evictions++;
+        }
+    }
+
+    synchronized void onNotModified() {
+        notModified++;
+    }
+
+    private static long getMaxBytes() {
+        return MCEF.getSettings().getAssetCacheMegabytes() * 1024L * 1024L;
+    }
+
+    /**
+     * An asset's contents along with what is needed to answer requests for it.
+     */
+    public static final class Asset {
+        private final byte[] data;
+        private final String mimeType;
+        private final String etag;
+
+        Asset(byte[] data, String mimeType) {
+            this.data = data;
+            this.mimeType = mimeType;
+            etag = computeETag(data);
+        }
+
+        /**
+         * Reads an asset fully.
+         *
+         * @param length the length of the asset, or -1 if unknown
+         */
+        static Asset read(InputStream is, long length, String mimeType) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length > 0 ? (int) length : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) > 0)
+                output.write(buffer, 0, read);
+            return new Asset(output.toByteArray(), mimeType);
+        }
+
+        /**
+         * Only to be read from, the array is shared by every request for the asset.
+         */
+        byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return data.length;
+        }
+
+        /**
+         * @return the MIME type, null if it couldn't be told from the extension
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return the quoted strong ETag, from the SHA-256 of the contents
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * @param ifNoneMatch the value of an {@code If-None-Match} header, may be null
+         * @return whether the header matches this asset, meaning the browser's copy is still valid
+         */
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isEmpty()) return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // If-None-Match uses the weak comparison, where a weak tag matches its strong counterpart
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+
+        private static String computeETag(byte[] data) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+                return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"';
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
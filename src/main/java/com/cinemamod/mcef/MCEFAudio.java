@@ -0,0 +1,131 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import org.cef.browser.CefBrowser;
+import org.cef.misc.CefAudioParameters;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Captures browser audio, when enabled with {@link MCEFSettings#setAudioCapture(boolean)}, and plays it on the
+ * "MCEF-Audio" thread.
+ * <p>
+ * CEF delivers audio packets on its own thread. Each one is copied into its browser's {@link MCEFAudioStream}
+ * without taking a lock, and the audio thread moves them on to a {@link MCEFAudioSink}, by default an
+ * {@link MCEFOpenALSink}. The audio thread wakes up every few milliseconds and keeps every sink
+ * {@link MCEFSettings#getAudioBufferMillis()} ahead, which is also the least latency the pipeline adds.
+ */
+public final class MCEFAudio {
+    private static final long SERVICE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final List<MCEFAudioStream> streams = new CopyOnWriteArrayList<>();
+    private volatile Function<MCEFBrowser, MCEFAudioSink> sinkFactory = browser -> new MCEFOpenALSink();
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    MCEFAudio() {
+    }
+
+    /**
+     * Sets what the audio of streams started from now on is played through, called on the "MCEF-Audio" thread.
+     * Mods playing audio positionally can return an {@link MCEFOpenALSink} and position its source.
+     */
+    public void setSinkFactory(Function<MCEFBrowser, MCEFAudioSink> sinkFactory) {
+        this.sinkFactory = sinkFactory;
+    }
+
+    /**
+     * @return a snapshot of the streams being played
+     */
+    public List<MCEFAudioStream> getStreams() {
+        return new ArrayList<>(streams);
+    }
+
+    MCEFAudioSink createSink(MCEFBrowser browser) {
+        return sinkFactory.apply(browser);
+    }
+
+    /**
+     * Called by {@link MCEFClient}, decides whether CEF hands a browser's audio to the client instead of playing it.
+     */
+    boolean getAudioParameters(CefBrowser browser, CefAudioParameters params) {
+        return browser instanceof MCEFBrowser && MCEF.getSettings().isAudioCapture();
+    }
+
+    void onAudioStreamStarted(CefBrowser browser, CefAudioParameters params, int channels) {
+        if (!(browser instanceof MCEFBrowser) || params == null || channels <= 0) return;
+        MCEFBrowser mcefBrowser = (MCEFBrowser) browser;
+        MCEFAudioStream stream = new MCEFAudioStream(mcefBrowser, params.sampleRate, channels, params.framesPerBuffer);
+        MCEFAudioStream previous = mcefBrowser.setAudioStream(stream);
+        if (previous != null) previous.stop();
+        streams.add(stream);
+        startThread();
+    }
+
+    void onAudioStreamPacket(CefBrowser browser, FloatBuffer data, int frames, long pts) {
+        if (!(browser instanceof MCEFBrowser)) return;
+        MCEFAudioStream stream = ((MCEFBrowser) browser).getAudioStream();
+        if (stream != null) stream.offer(data, frames, pts);
+    }
+
+    void onAudioStreamStopped(CefBrowser browser) {
+        if (!(browser instanceof MCEFBrowser)) return;
+        MCEFAudioStream stream = ((MCEFBrowser) browser).setAudioStream(null);
+        if (stream != null) stream.stop();
+    }
+
+    void shutdown() {
+        running = false;
+        Thread audioThread = thread;
+        if (audioThread != null) LockSupport.unpark(audioThread);
+    }
+
+    private synchronized void startThread() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this::run, "MCEF-Audio");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            for (MCEFAudioStream stream : streams) {
+                if (stream.service()) {
+                    stream.closeSink();
+                    streams.remove(stream);
+                }
+            }
+            LockSupport.parkNanos(this, SERVICE_INTERVAL_NANOS);
+        }
+        for (MCEFAudioStream stream : streams)
+            stream.closeSink();
+        streams.clear();
+    }
+}
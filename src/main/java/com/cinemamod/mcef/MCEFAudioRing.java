@@ -0,0 +1,164 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free single-producer single-consumer ring of interleaved audio samples.
+ * <p>
+ * The producer is the CEF thread delivering audio packets, the consumer the "MCEF-Audio" thread. Positions only ever
+ * grow and each is written by one side only, published with {@link AtomicLong#lazySet(long)}. Next to the samples,
+ * the ring keeps the position and presentation timestamp of every packet, so the consumer knows the timestamp of
+ * the sample it reads next.
+ * <p>
+ * A packet that doesn't fit is dropped whole and counted as an overrun, the producer never waits on the consumer.
+ */
+final class MCEFAudioRing {
+    private final float[] samples;
+    private final int mask;
+    private final long[] markPositions;
+    private final long[] markPts;
+    private final int markMask;
+    // Samples written and read, only advanced by the producer and consumer respectively
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // Packets written, and the packet the consumer is reading from
+    private final AtomicLong markHead = new AtomicLong();
+    private final AtomicLong markTail = new AtomicLong();
+
+    // Only written by the producer
+    private volatile long overruns = 0;
+    private volatile long droppedSamples = 0;
+
+    /**
+     * @param capacity the least amount of samples the ring holds
+     * @param packets  the least amount of packets the ring holds
+     */
+    MCEFAudioRing(int capacity, int packets) {
+        samples = new float[powerOfTwo(capacity)];
+        mask = samples.length - 1;
+        markPositions = new long[powerOfTwo(packets)];
+        markPts = new long[markPositions.length];
+        markMask = markPositions.length - 1;
+    }
+
+    private static int powerOfTwo(int value) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, value - 1)) << 1);
+    }
+
+    int getCapacity() {
+        return samples.length;
+    }
+
+    /**
+     * @return the amount of packets dropped because the ring was full
+     */
+    long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the amount of samples in dropped packets
+     */
+    long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    /**
+     * @return the amount of samples waiting to be read, from either side
+     */
+    int available() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /**
+     * Writes a packet, only called by the producer.
+     *
+     * @param src    the samples to write
+     * @param length the amount of samples to write from the start of {@code src}
+     * @param pts    the presentation timestamp of the first sample
+     * @return false if the packet was dropped because the ring was full
+     */
+    boolean write(FloatBuffer src, int length, long pts) {
+        long h = head.get();
+        long mh = markHead.get();
+        if (h + length - tail.get() > samples.length || mh - markTail.get() >= markPositions.length) {
+            overruns++;
+            droppedSamples += length;
+            return false;
+        }
+
+        int offset = (int) h & mask;
+        int first = Math.min(length, samples.length - offset);
+        src.clear();
+        src.get(samples, offset, first);
+        src.get(samples, 0, length - first);
+
+        int mark = (int) mh & markMask;
+        markPositions[mark] = h;
+        markPts[mark] = pts;
+        // The mark is published before the samples, so it's visible by the time the consumer reads them
+        markHead.lazySet(mh + 1);
+        head.lazySet(h + length);
+        return true;
+    }
+
+    /**
+     * Reads up to the given amount of samples, only called by the consumer.
+     *
+     * @return the amount of samples read
+     */
+    int read(float[] dst, int length) {
+        long t = tail.get();
+        int count = (int) Math.min(length, head.get() - t);
+        if (count <= 0) return 0;
+
+        int offset = (int) t & mask;
+        int first = Math.min(count, samples.length - offset);
+        System.arraycopy(samples, offset, dst, 0, first);
+        System.arraycopy(samples, 0, dst, first, count - first);
+        tail.lazySet(t + count);
+
+        // Move on to the packet containing the next sample, keeping the current one around
+        long mt = markTail.get();
+        long mh = markHead.get();
+        while (mt + 1 < mh && markPositions[(int) (mt + 1) & markMask] <= t + count)
+            mt++;
+        markTail.lazySet(mt);
+        return count;
+    }
+
+    /**
+     * Only called by the consumer.
+     *
+     * @return the presentation timestamp of the next sample to be read, in milliseconds since the epoch,
+     * or {@link Long#MIN_VALUE} if nothing was written yet
+     */
+    long getReadPts(int channels, int sampleRate) {
+        long mt = markTail.get();
+        if (mt == markHead.get()) return Long.MIN_VALUE;
+        int mark = (int) mt & markMask;
+        long frames = (tail.get() - markPositions[mark]) / channels;
+        return markPts[mark] + frames * 1000 / sampleRate;
+    }
+}
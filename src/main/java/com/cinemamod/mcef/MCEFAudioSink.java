@@ -0,0 +1,61 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+/**
+ * Where {@link MCEFAudio} plays a browser's audio, see {@link MCEFAudio#setSinkFactory(java.util.function.Function)}.
+ * <p>
+ * Every method is called on the "MCEF-Audio" thread, one sink per audio stream. A sink that throws is closed and
+ * replaced by a new one from the factory a second later, so a sink can give up once its output is gone.
+ */
+public interface MCEFAudioSink {
+    /**
+     * Called once, before anything is written.
+     *
+     * @param sampleRate the sample rate of the stream, in Hz
+     * @param channels   the amount of interleaved channels in every write
+     */
+    void open(int sampleRate, int channels);
+
+    /**
+     * @return the amount of frames written but not played yet, 0 when the sink ran dry
+     */
+    int getQueuedFrames();
+
+    /**
+     * @return the most frames a single {@link #write(float[], int)} accepts right now, 0 while the sink is full
+     */
+    int getWritableFrames();
+
+    /**
+     * Queues samples for playback. The array is reused once this returns.
+     *
+     * @param samples interleaved samples, between -1 and 1
+     * @param frames  the amount of frames to queue, each one holding a sample per channel
+     * @return the amount of frames queued, frames beyond that are lost
+     */
+    int write(float[] samples, int frames);
+
+    /**
+     * Called once, when the stream ended or MCEF shuts down.
+     */
+    void close();
+}
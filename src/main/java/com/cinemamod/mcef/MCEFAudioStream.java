@@ -0,0 +1,232 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.nio.FloatBuffer;
+
+/**
+ * An audio stream of a browser, from CEF starting it until it stopped and was played out.
+ * <p>
+ * Packets are pushed by the CEF thread into an {@link MCEFAudioRing}, which the "MCEF-Audio" thread drains into the
+ * stream's {@link MCEFAudioSink}.
+ */
+public final class MCEFAudioStream {
+    private static final long SINK_RETRY_MILLIS = 1000;
+
+    private final MCEFBrowser browser;
+    private final int sampleRate;
+    private final int channels;
+    private final MCEFAudioRing ring;
+    private volatile boolean stopped = false;
+
+    // Only used by the audio thread
+    private MCEFAudioSink sink;
+    private boolean sinkFailed = false;
+    private long sinkRetryTime = 0;
+    private boolean playing = false;
+    private float[] scratch = new float[0];
+
+    // Only written by the audio thread
+    private volatile long underruns = 0;
+    private volatile long playedFrames = 0;
+    private volatile long lostFrames = 0;
+    private volatile long latencyMillis = -1;
+
+    MCEFAudioStream(MCEFBrowser browser, int sampleRate, int channels, int framesPerBuffer) {
+        this.browser = browser;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        int capacity = sampleRate * MCEF.getSettings().getAudioRingMillis() / 1000;
+        int packetFrames = Math.max(1, framesPerBuffer);
+        ring = new MCEFAudioRing(Math.max(capacity, packetFrames * 2) * channels, capacity / packetFrames + 2);
+    }
+
+    public MCEFBrowser getBrowser() {
+        return browser;
+    }
+
+    /**
+     * @return the sample rate, in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the amount of interleaved channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return whether CEF stopped the stream, it is still played out until its ring is empty
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return the amount of packets dropped because the ring was full
+     */
+    public long getOverruns() {
+        return ring.getOverruns();
+    }
+
+    /**
+     * @return the amount of times the sink ran dry while the stream was playing
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * @return the amount of frames queued by the sink
+     */
+    public long getPlayedFrames() {
+        return playedFrames;
+    }
+
+    /**
+     * @return the amount of frames read from the ring that the sink didn't queue
+     */
+    public long getLostFrames() {
+        return lostFrames;
+    }
+
+    /**
+     * @return the amount of frames waiting in the ring
+     */
+    public int getBufferedFrames() {
+        return ring.available() / channels;
+    }
+
+    /**
+     * @return how long after its presentation timestamp the sample currently heard was due, in milliseconds,
+     * -1 until measured
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * Called on the CEF thread for every packet.
+     */
+    void offer(FloatBuffer data, int frames, long pts) {
+        if (stopped || frames <= 0) return;
+        ring.write(data, frames * channels, pts);
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Called on the audio thread, moves samples from the ring to the sink until it holds
+     * {@link MCEFSettings#getAudioBufferMillis()} worth of frames.
+     *
+     * @return whether the stream is done and can be forgotten
+     */
+    boolean service() {
+        if (sink == null && System.currentTimeMillis() >= sinkRetryTime) {
+            try {
+                sink = MCEF.getAudio().createSink(browser);
+                sink.open(sampleRate, channels);
+                if (sinkFailed) MCEF.getLogger().info("Reopened the audio sink of a browser");
+                sinkFailed = false;
+            } catch (RuntimeException e) {
+                sinkFailed(e);
+            }
+        }
+
+        if (sink != null) {
+            try {
+                return play();
+            } catch (RuntimeException e) {
+                // The sound engine reloading takes the OpenAL context with it, reopen on the new one
+                sinkFailed(e);
+            }
+        }
+
+        // Keep the ring drained so the producer doesn't count overruns
+        if (scratch.length < ring.getCapacity()) scratch = new float[ring.getCapacity()];
+        ring.read(scratch, scratch.length);
+        return stopped;
+    }
+
+    private boolean play() {
+        int target = sampleRate * MCEF.getSettings().getAudioBufferMillis() / 1000;
+        int queued = sink.getQueuedFrames();
+        int available = ring.available() / channels;
+        if (queued == 0 && available == 0) {
+            if (playing && !stopped) underruns++;
+            playing = false;
+            return stopped;
+        }
+
+        // Only take from the ring what the sink can queue, the rest waits for the next pass
+        int frames = Math.min(Math.min(available, target - queued), sink.getWritableFrames());
+        if (frames > 0) {
+            if (scratch.length < frames * channels) scratch = new float[frames * channels];
+            ring.read(scratch, frames * channels);
+            int written = sink.write(scratch, frames);
+            if (written < frames) lostFrames += frames - written;
+            queued += written;
+            playedFrames += written;
+            playing = true;
+        }
+
+        long pts = ring.getReadPts(channels, sampleRate);
+        if (pts != Long.MIN_VALUE) {
+            long heardPts = pts - (long) queued * 1000 / sampleRate;
+            latencyMillis = Math.max(0, System.currentTimeMillis() - heardPts);
+        }
+        return false;
+    }
+
+    /**
+     * Called on the audio thread once the stream is done or MCEF shuts down.
+     */
+    void closeSink() {
+        if (sink != null) {
+            try {
+                sink.close();
+            } finally {
+                sink = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the sink and tries to open a new one after {@link #SINK_RETRY_MILLIS}, the ring is drained meanwhile.
+     */
+    private void sinkFailed(RuntimeException e) {
+        if (!sinkFailed)
+            MCEF.getLogger().warn("Audio sink failed, discarding browser audio until it can be reopened", e);
+        sinkFailed = true;
+        playing = false;
+        sinkRetryTime = System.currentTimeMillis() + SINK_RETRY_MILLIS;
+        try {
+            closeSink();
+        } catch (RuntimeException ignored) {
+        }
+    }
+}
@@ -21,11 +21,12 @@
 package com.cinemamod.mcef;
 
 import com.cinemamod.mcef.listeners.MCEFCursorChangeListener;
-import com.mojang.blaze3d.platform.GlStateManager;
+import com.cinemamod.mcef.listeners.MCEFFrameListener;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.client.Minecraft;
 import org.cef.browser.CefBrowser;
 import org.cef.browser.CefBrowserOsr;
+import org.cef.browser.CefFrame;
 import org.cef.callback.CefDragData;
 import org.cef.event.CefKeyEvent;
 import org.cef.event.CefMouseEvent;
@@ -34,10 +35,20 @@ import org.cef.misc.CefCursorType;
 import org.lwjgl.glfw.GLFW;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import static org.lwjgl.glfw.GLFW.*;
-import static org.lwjgl.opengl.GL11.*;
 
 /**
  * An instance of an "Off-screen rendered" Chromium web browser.
@@ -45,10 +56,50 @@ import static org.lwjgl.opengl.GL11.*;
  * browser control shortcuts, cursor handling, drag & drop support.
  */
 public class MCEFBrowser extends CefBrowserOsr {
+    /**
+     * The frame rate CEF paints off-screen browsers at unless told otherwise.
+     */
+    public static final int DEFAULT_FRAME_RATE = 30;
+    /**
+     * The most render frames a resize waits before CEF is told about it, even if the size keeps changing.
+     */
+    public static final int MAX_RESIZE_DELAY = 15;
+    /**
+     * The lowest render scale, see {@link #setRenderScale(double)}.
+     */
+    public static final double MIN_RENDER_SCALE = 0.1;
+    /**
+     * Render scales picked by the controller are rounded up to a multiple of this, so small changes in
+     * on-screen size don't make CEF repaint at a new scale.
+     */
+    private static final double RENDER_SCALE_STEP = 0.125;
+    /**
+     * How many render frames the controller waits on a lower render scale before applying it,
+     * raising it happens right away.
+     */
+    private static final int RENDER_SCALE_DOWN_DELAY = 30;
+    /**
+     * How many render frames a screenshot waits on a paint before failing, e.g. because the browser is hidden.
+     */
+    private static final int SCREENSHOT_TIMEOUT = 60;
+    /**
+     * Prefixes the console message a page is asked to log its scroll position with before hibernating,
+     * followed by the nonce of that request so the page can't answer in its place.
+     */
+    private static final String SCROLL_MESSAGE = "mcef:scroll:";
+    private static final SecureRandom SCROLL_NONCES = new SecureRandom();
+    /**
+     * How many render frames to wait on the scroll position before hibernating without it.
+     */
+    private static final int SCROLL_TIMEOUT = 30;
     /**
      * The renderer for the browser.
      */
     private final MCEFRenderer renderer;
+    /**
+     * Merges dirty rectangles before they are copied and uploaded.
+     */
+    private final MCEFRectCoalescer rectCoalescer;
     /**
      * Stores information about drag & drop.
      */
@@ -74,27 +125,163 @@ public class MCEFBrowser extends CefBrowserOsr {
      * CEF is a bit odd and implements mouse buttons as a part of modifier flags.
      */
     private int btnMask = 0;
+    /**
+     * Whether a full copy of the browser's pixels is kept in {@link #graphics}.
+     * When disabled, dismissing a popup asks CEF to repaint the browser instead of restoring from the copy.
+     */
+    private boolean shadowBuffer;
+    /**
+     * The frame rate CEF is asked to paint at, and whether the browser is hidden.
+     * Applied to the native browser on the next render frame, see {@link #onRenderFrame(long)}.
+     */
+    private int maxFrameRate;
+    private boolean hidden = false;
+    private int appliedFrameRate = DEFAULT_FRAME_RATE;
+    private boolean appliedHidden = false;
+    /**
+     * Whether the frame rate is lowered when the texture hasn't been sampled for a while.
+     */
+    private boolean frameRateGovernor;
+    private boolean popupCompositing = true;
+    /**
+     * The device scale factor CEF paints the browser at, applied on the next render frame.
+     * With the controller, it follows the on-screen size reported through {@link #reportScreenSize(double, double)}.
+     */
+    private volatile double renderScale = 1;
+    /**
+     * The highest render scale allowed by the {@link MCEFMemoryBudget}, 1 unless over budget.
+     */
+    private volatile double renderScaleLimit = 1;
+    /**
+     * Set when the render scale limit is lowered, the next smaller full paint reallocates storage to fit it.
+     */
+    private boolean compactStorage = false;
+    private boolean renderScaleController;
+    private double screenWidth, screenHeight;
+    private long screenSizeFrame = -1;
+    private long renderScaleDownSince = -1;
+    private boolean focused = false;
+    private double cameraDistance = 0;
+    /**
+     * Dirty rectangles waiting on the {@link MCEFUploadScheduler}, their pixels are in the staging buffer.
+     */
+    private final List<Rectangle> pendingUploads = new ArrayList<>();
+    private final MCEFRectCoalescer pendingCoalescer;
+    private ByteBuffer stagingBuffer;
+    private long pendingSinceFrame;
+    /**
+     * Owns the texture and off-heap buffers of the browser, including the buffers pixels are copied to
+     * when painting from a dedicated message pump thread, see {@link MCEFMessagePump}.
+     */
+    private final MCEFResourceTracker.Entry resources;
+    /**
+     * The size of the last paint from a dedicated message pump thread, to tell when the whole buffer has to be copied.
+     */
+    private int pumpWidth = 0, pumpHeight = 0;
+    /**
+     * Set by any thread that needs the next paint from the message pump thread copied whole,
+     * only cleared by the pump thread, which owns everything else it decides that on.
+     */
+    private final AtomicBoolean fullCopyRequired = new AtomicBoolean(true);
+    /**
+     * The size asked for by the last {@link #resize(int, int)} that CEF wasn't told about yet, -1 if there is none.
+     */
+    private int resizeWidth = -1, resizeHeight = -1;
+    private long resizeRequestFrame;
+    private long lastResizeFrame = -MAX_RESIZE_DELAY;
+    private long resizeRequests = 0, appliedResizes = 0;
+    /**
+     * Where the time until the next paint gets recorded, for {@link MCEFBrowserPool} statistics.
+     */
+    private MCEFLatencyHistogram firstPaintLatency;
+    private long firstPaintStart;
+    /**
+     * Set by {@link MCEFBrowserPool} while the browser sits idle in it.
+     */
+    boolean pooled = false;
+    /**
+     * The open {@link MCEFBrowserMirror}s, each holding a reference to the browser next to its owner's.
+     * The browser is released once the owner released it and none are left.
+     */
+    private final List<MCEFBrowserMirror> mirrors = new ArrayList<>();
+    private boolean ownerReleased = false;
+    private boolean closed = false;
+    private MCEFBrowserMirror focusedMirror;
+    /**
+     * Screenshots waiting on the next paint, for browsers without a shadow buffer, see {@link MCEFScreenshots}.
+     * The flag makes paints from a dedicated message pump thread copy the whole frame.
+     */
+    private final List<MCEFScreenshots.Request<?>> pendingScreenshots = new ArrayList<>();
+    private volatile boolean screenshotRequested = false;
+    private long screenshotSince;
+    /**
+     * Hands paints to {@link MCEFFrameSubscription}s.
+     */
+    private final MCEFFrameTap frameTap = new MCEFFrameTap(this);
+    /**
+     * The audio stream CEF is currently delivering, see {@link MCEFAudio}. Only set on the CEF thread.
+     */
+    private volatile MCEFAudioStream audioStream;
+
+    // Hibernation, see MCEFLifecycleManager
+    private boolean hibernation = true;
+    private volatile Hibernation hibernationState = Hibernation.NONE;
+    private boolean wakeRequested = false;
+    private boolean restoreScroll = false;
+    private String hibernatedUrl;
+    private String scrollMarker;
+    private volatile int scrollX, scrollY;
+    private long hibernationFrame;
+    private long lastUsedFrame;
 
     // Data relating to popups and graphics
     // Marked as protected in-case a mod wants to extend MCEFBrowser and override the repaint logic
+    // graphics is null unless the shadow buffer is in use
     protected ByteBuffer graphics;
-    protected ByteBuffer popupGraphics;
     protected Rectangle popupSize;
     protected boolean showPopup = false;
     protected boolean popupDrawn = false;
+    /**
+     * The popup's pixels, only kept when popups are composited on the CPU because the GPU can't copy
+     * between textures, see {@link #drawPopup()}.
+     */
+    protected ByteBuffer popupGraphics;
+    private int popupGraphicsWidth, popupGraphicsHeight;
 
     public MCEFBrowser(MCEFClient client, String url, boolean transparent) {
         super(client.getHandle(), url, transparent, null);
         renderer = new MCEFRenderer(transparent);
-        cursorChangeListener = (cefCursorID) -> setCursor(CefCursorType.fromId(cefCursorID));
+        resources = MCEFResourceTracker.track(this, renderer, url);
+        MCEFSettings settings = MCEF.getSettings();
+        rectCoalescer = new MCEFRectCoalescer(settings.getDirtyRectMaxWaste(), settings.getDirtyRectFullFrameThreshold());
+        // Pending uploads are read back from the staging buffer, which only holds the dirty pixels,
+        // so only merge them when that wastes nothing and never promote them to a full frame
+        pendingCoalescer = new MCEFRectCoalescer(0, Double.POSITIVE_INFINITY);
+        shadowBuffer = settings.isUsingShadowBuffer();
+        maxFrameRate = settings.getMaxFrameRate();
+        frameRateGovernor = settings.isUsingFrameRateGovernor();
+        renderScaleController = settings.isUsingRenderScaleController();
+        useMipmaps(settings.isUsingMipmaps());
+        cursorChangeListener = defaultCursorChangeListener();
+
+        touch();
 
         Minecraft.getInstance().submit(renderer::initialize);
+        MCEF.trackBrowser(this);
+    }
+
+    private MCEFCursorChangeListener defaultCursorChangeListener() {
+        return (cefCursorID) -> setCursor(CefCursorType.fromId(cefCursorID));
     }
 
     public MCEFRenderer getRenderer() {
         return renderer;
     }
 
+    public MCEFRectCoalescer getRectCoalescer() {
+        return rectCoalescer;
+    }
+
     public MCEFCursorChangeListener getCursorChangeListener() {
         return cursorChangeListener;
     }
@@ -119,6 +306,689 @@ public class MCEFBrowser extends CefBrowserOsr {
         return this;
     }
 
+    public boolean usingShadowBuffer() {
+        return shadowBuffer;
+    }
+
+    /**
+     * The shadow buffer is a full copy of the browser's pixels on the CPU side, without popups, costing
+     * width * height * 4 bytes of off-heap memory and a copy of every dirty pixel. Popups don't need it,
+     * see {@link #usePopupCompositing(boolean)}; it is only useful to mods reading the pixels back.
+     *
+     * @param shadowBuffer whether the shadow buffer should be kept
+     * @return the browser instance
+     */
+    public MCEFBrowser useShadowBuffer(boolean shadowBuffer) {
+        if (this.shadowBuffer == shadowBuffer) return this;
+        this.shadowBuffer = shadowBuffer;
+        fullCopyRequired.set(true);
+        runOnRenderThread(() -> {
+            resources.free(graphics);
+            graphics = null;
+        });
+        // Request a full repaint so the shadow buffer gets filled
+        if (shadowBuffer) invalidate();
+        return this;
+    }
+
+    public boolean usingMipmaps() {
+        return renderer.usingMipmaps();
+    }
+
+    /**
+     * Mipmaps keep in-world screens seen from a distance from shimmering, and let the GPU sample a smaller
+     * level. Only the mip levels under what changed get regenerated, on the GPU, at most once every
+     * {@link MCEFSettings#getMipmapInterval()} frames and less often under load. Browsers only drawn at their
+     * full size, like GUI screens, don't need them. Takes effect on the render thread.
+     *
+     * @param mipmaps whether the browser's textures should have mip levels
+     * @return the browser instance
+     */
+    public MCEFBrowser useMipmaps(boolean mipmaps) {
+        runOnRenderThread(() -> renderer.useMipmaps(mipmaps));
+        return this;
+    }
+
+    public int getMaxFrameRate() {
+        return maxFrameRate;
+    }
+
+    /**
+     * Sets the maximum rate at which CEF paints this browser.
+     * Takes effect on the next render frame.
+     *
+     * @param maxFrameRate the maximum frame rate, from 1 to 60
+     * @return the browser instance
+     */
+    public MCEFBrowser setMaxFrameRate(int maxFrameRate) {
+        this.maxFrameRate = Math.max(1, Math.min(60, maxFrameRate));
+        return this;
+    }
+
+    public double getRenderScale() {
+        return renderScale;
+    }
+
+    /**
+     * Paints the browser at a fraction of its size, to be sampled up when drawn. The page keeps its layout and
+     * input coordinates, CEF is only told the screen has a lower device scale factor, so a browser at 0.25 paints,
+     * copies and uploads 1/16th of the pixels. The texture then has the browser's size times the render scale,
+     * see {@link MCEFRenderer#getWidth()}. Takes effect on the next render frame, capped by {@link #getRenderScaleLimit()}.
+     *
+     * @param renderScale the render scale, from {@link #MIN_RENDER_SCALE} to 1
+     * @return the browser instance
+     */
+    public MCEFBrowser setRenderScale(double renderScale) {
+        this.renderScale = Math.max(MIN_RENDER_SCALE, Math.min(1, renderScale));
+        return this;
+    }
+
+    /**
+     * @return the highest render scale the {@link MCEFMemoryBudget} currently allows, 1 unless memory ran short
+     */
+    public double getRenderScaleLimit() {
+        return renderScaleLimit;
+    }
+
+    void setRenderScaleLimit(double renderScaleLimit) {
+        renderScaleLimit = Math.max(MIN_RENDER_SCALE, Math.min(1, renderScaleLimit));
+        // Storage is reused for smaller paints, let go of it once the smaller paint comes in
+        if (renderScaleLimit < this.renderScaleLimit) compactStorage = true;
+        this.renderScaleLimit = renderScaleLimit;
+    }
+
+    public boolean usingRenderScaleController() {
+        return renderScaleController;
+    }
+
+    /**
+     * The render scale controller sets the {@link #setRenderScale(double) render scale} from the size the browser
+     * covers on screen, reported every frame it is drawn through {@link #reportScreenSize(double, double)}.
+     * It raises the scale as soon as the browser needs more pixels, and only lowers it once it has needed
+     * noticeably fewer for a while. It never goes below {@link MCEFSettings#getMinRenderScale()}.
+     *
+     * @param renderScaleController whether the render scale follows the on-screen size
+     * @return the browser instance
+     */
+    public MCEFBrowser useRenderScaleController(boolean renderScaleController) {
+        this.renderScaleController = renderScaleController;
+        renderScaleDownSince = -1;
+        return this;
+    }
+
+    /**
+     * Reports how many pixels of the player's display the browser covers this frame, e.g. the size of the
+     * bounding box of its projected corners. Only used by the render scale controller.
+     *
+     * @param width  the width covered on screen, in pixels
+     * @param height the height covered on screen, in pixels
+     */
+    public void reportScreenSize(double width, double height) {
+        // With mirrors, render for the largest of them
+        long frame = MCEF.getRenderFrame();
+        if (screenSizeFrame == frame) {
+            width = Math.max(width, screenWidth);
+            height = Math.max(height, screenHeight);
+        }
+        screenWidth = width;
+        screenHeight = height;
+        screenSizeFrame = frame;
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    /**
+     * Hidden browsers stop painting and have their timers throttled by Chromium, but keep running scripts
+     * and playing audio. Takes effect on the next render frame.
+     *
+     * @param hidden whether the browser is hidden
+     * @return the browser instance
+     */
+    public MCEFBrowser setHidden(boolean hidden) {
+        this.hidden = hidden;
+        return this;
+    }
+
+    public boolean usingFrameRateGovernor() {
+        return frameRateGovernor;
+    }
+
+    /**
+     * The frame rate governor lowers the frame rate of the browser to {@link MCEFSettings#getIdleFrameRate()}
+     * once its texture hasn't been sampled through {@link MCEFRenderer#getTextureID()} for
+     * {@link MCEFSettings#getIdleFrames()} render frames, and restores it as soon as it is sampled again.
+     *
+     * @param frameRateGovernor whether the frame rate governor should be enabled
+     * @return the browser instance
+     */
+    public MCEFBrowser useFrameRateGovernor(boolean frameRateGovernor) {
+        this.frameRateGovernor = frameRateGovernor;
+        return this;
+    }
+
+    @Override
+    public void setFocus(boolean enable) {
+        focused = enable;
+        super.setFocus(enable);
+    }
+
+    public boolean isFocused() {
+        return focused;
+    }
+
+    public double getCameraDistance() {
+        return cameraDistance;
+    }
+
+    /**
+     * Lets the {@link MCEFUploadScheduler} upload browsers nearer the camera first. Mods drawing browsers
+     * in the world should update this every frame; browsers that never set it count as nearest.
+     *
+     * @param cameraDistance the distance between the camera and where the browser is drawn, in blocks
+     * @return the browser instance
+     */
+    public MCEFBrowser setCameraDistance(double cameraDistance) {
+        this.cameraDistance = cameraDistance;
+        return this;
+    }
+
+    /**
+     * @return the amount of bytes waiting on the {@link MCEFUploadScheduler}
+     */
+    public long getPendingUploadBytes() {
+        long bytes = 0;
+        for (Rectangle rect : pendingUploads)
+            bytes += (long) rect.width * rect.height * 4;
+        return bytes;
+    }
+
+    /**
+     * @return how many frames uploads have been waiting on the {@link MCEFUploadScheduler} without all of them
+     * getting through, 0 if none are waiting
+     */
+    public long getUploadLagFrames() {
+        return pendingUploads.isEmpty() ? 0 : MCEF.getRenderFrame() - pendingSinceFrame;
+    }
+
+    /**
+     * @return how many times {@link #resize(int, int)} was called
+     */
+    public long getResizeRequests() {
+        return resizeRequests;
+    }
+
+    /**
+     * @return how many times CEF was told about a new size, after debouncing and coalescing resize requests
+     */
+    public long getAppliedResizes() {
+        return appliedResizes;
+    }
+
+    /**
+     * @return how many off-heap buffers were allocated for this browser, mostly because of resizes,
+     * see {@link MCEFRenderer#getTextureAllocations()} for the texture
+     */
+    public long getBufferAllocations() {
+        return resources.getAllocations();
+    }
+
+    public boolean usingHibernation() {
+        return hibernation;
+    }
+
+    /**
+     * Browsers that don't use hibernation are never hibernated by the {@link MCEFLifecycleManager},
+     * they still count towards {@link MCEFSettings#getMaxLiveBrowsers()}.
+     *
+     * @param hibernation whether the browser may be hibernated
+     * @return the browser instance
+     */
+    public MCEFBrowser useHibernation(boolean hibernation) {
+        this.hibernation = hibernation;
+        return this;
+    }
+
+    /**
+     * @return whether the browser is hibernated or on its way there, see {@link #hibernate()}
+     */
+    public boolean isHibernated() {
+        return hibernationState != Hibernation.NONE;
+    }
+
+    /**
+     * @return the last render frame on which the texture was sampled, input was sent, or the browser was
+     * created or handed out by the {@link MCEFBrowserPool}
+     */
+    public long getLastUsedFrame() {
+        return Math.max(renderer.getLastSampledFrame(), lastUsedFrame);
+    }
+
+    /**
+     * Closes the native browser, and with it its renderer process, while keeping the last frame in the texture.
+     * The URL and scroll position are recorded and restored by {@link #wake()}, which happens on its own as soon
+     * as the texture is sampled or input is sent. Anything else about the page, like form contents, is lost.
+     * <p>
+     * The page is first asked for its scroll position, the browser is closed once it answers.
+     * Life span handlers see the browser close and get created again.
+     *
+     * @return whether the browser started hibernating
+     */
+    public synchronized boolean hibernate() {
+        if (hibernationState != Hibernation.NONE || getNativeRef("CefBrowser") == 0) return false;
+        hibernatedUrl = getURL();
+        hibernationFrame = MCEF.getRenderFrame();
+        wakeRequested = false;
+        hibernationState = Hibernation.SAVING;
+        scrollMarker = SCROLL_MESSAGE + Long.toHexString(SCROLL_NONCES.nextLong()) + ":";
+        executeJavaScript("console.info('" + scrollMarker + "' + window.scrollX + ',' + window.scrollY)", "", 0);
+        return true;
+    }
+
+    /**
+     * Brings a hibernated browser back, see {@link #hibernate()}. If the browser is still being closed,
+     * it is brought back once that is done.
+     */
+    public synchronized void wake() {
+        switch (hibernationState) {
+            case SAVING:
+                // Never got closed
+                hibernationState = Hibernation.NONE;
+                break;
+            case CLOSING:
+                wakeRequested = true;
+                break;
+            case HIBERNATED:
+                restore();
+                break;
+        }
+    }
+
+    void touch() {
+        lastUsedFrame = MCEF.getRenderFrame();
+    }
+
+    private void onInput() {
+        touch();
+        if (hibernationState != Hibernation.NONE) wake();
+    }
+
+    private synchronized void closeForHibernation() {
+        if (hibernationState != Hibernation.SAVING) return;
+        hibernationState = Hibernation.CLOSING;
+        close(true);
+        runOnRenderThread(() -> {
+            // The texture keeps the last frame, the rest gets repainted on restore
+            erasePopup();
+            resources.free(graphics);
+            graphics = null;
+            renderer.hidePopup();
+            showPopup = false;
+            popupSize = null;
+            popupDrawn = false;
+            resources.clearPaintBuffers();
+            dropPendingUploads();
+        });
+    }
+
+    private void restore() {
+        // HIBERNATED is set in onBeforeClose, just before CEF lets go of the native browser, try again next frame
+        if (getNativeRef("CefBrowser") != 0) {
+            wakeRequested = true;
+            return;
+        }
+        if (!recreate(hibernatedUrl)) return;
+        touch();
+        hibernationState = Hibernation.NONE;
+        wakeRequested = false;
+        restoreScroll = scrollX != 0 || scrollY != 0;
+        // The new native browser starts out visible at the default frame rate
+        appliedHidden = false;
+        appliedFrameRate = DEFAULT_FRAME_RATE;
+        fullCopyRequired.set(true);
+    }
+
+    @Override
+    public synchronized void onBeforeClose() {
+        super.onBeforeClose();
+        if (hibernationState == Hibernation.CLOSING) hibernationState = Hibernation.HIBERNATED;
+    }
+
+    /**
+     * Called by {@link MCEFClient} for every console message of this browser.
+     *
+     * @return true if the message answers the scroll position request of {@link #hibernate()}, and should be hidden
+     */
+    synchronized boolean onConsoleMessage(String message) {
+        if (hibernationState != Hibernation.SAVING || !message.startsWith(scrollMarker)) return false;
+        String[] scroll = message.substring(scrollMarker.length()).split(",");
+        try {
+            scrollX = (int) Double.parseDouble(scroll[0]);
+            scrollY = (int) Double.parseDouble(scroll[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            scrollX = 0;
+            scrollY = 0;
+        }
+        closeForHibernation();
+        return true;
+    }
+
+    /**
+     * Called by {@link MCEFClient} when a frame of this browser finished loading.
+     */
+    void onLoadEnd(CefFrame frame) {
+        if (!restoreScroll || !frame.isMain()) return;
+        restoreScroll = false;
+        frame.executeJavaScript("window.scrollTo(" + scrollX + "," + scrollY + ")", frame.getURL(), 0);
+    }
+
+    /**
+     * Called by {@link MCEF} once per render frame, after CEF's message loop work was done.
+     *
+     * @param frame the current render frame, see {@link MCEF#getRenderFrame()}
+     */
+    protected void onRenderFrame(long frame) {
+        switch (hibernationState) {
+            case SAVING:
+                // The page never answered, hibernate without its scroll position
+                synchronized (this) {
+                    if (hibernationState == Hibernation.SAVING && frame - hibernationFrame > SCROLL_TIMEOUT) {
+                        scrollX = 0;
+                        scrollY = 0;
+                        closeForHibernation();
+                    }
+                }
+                break;
+            case HIBERNATED:
+                if (wakeRequested || frame - renderer.getLastSampledFrame() <= 1) wake();
+                break;
+        }
+
+        if (resizeWidth != -1) {
+            int debounce = MCEF.getSettings().getResizeDebounceFrames();
+            if (frame - resizeRequestFrame >= debounce || frame - lastResizeFrame >= MAX_RESIZE_DELAY)
+                applyResize(resizeWidth, resizeHeight);
+        }
+
+        renderer.updateMipmaps(frame);
+        if (!pendingScreenshots.isEmpty() && frame - screenshotSince > SCREENSHOT_TIMEOUT)
+            failScreenshots(new TimeoutException("Browser did not paint, it may be hidden"));
+        if (renderScaleController) updateRenderScale(frame);
+        // Read when the native browser gets created, so can be applied before it exists
+        double scale = Math.min(renderScale, renderScaleLimit);
+        if (scale != getScaleFactor()) setScaleFactor(scale);
+
+        // Nothing can be applied until the native browser exists
+        if (getNativeRef("CefBrowser") == 0) return;
+
+        if (hidden != appliedHidden) {
+            wasHidden(hidden);
+            appliedHidden = hidden;
+        }
+
+        int frameRate = maxFrameRate;
+        MCEFSettings settings = MCEF.getSettings();
+        if (frameRateGovernor && frame - renderer.getLastSampledFrame() > settings.getIdleFrames())
+            frameRate = Math.min(frameRate, settings.getIdleFrameRate());
+        if (frameRate != appliedFrameRate) {
+            setWindowlessFrameRate(frameRate);
+            appliedFrameRate = frameRate;
+        }
+    }
+
+    private void updateRenderScale(long frame) {
+        // Reported during the last frame, the browser isn't being drawn otherwise
+        if (frame - screenSizeFrame > 1) return;
+
+        double needed = Math.max(screenWidth / browser_rect_.width, screenHeight / browser_rect_.height);
+        double target = Math.ceil(needed / RENDER_SCALE_STEP) * RENDER_SCALE_STEP;
+        target = Math.max(MCEF.getSettings().getMinRenderScale(), Math.min(1, target));
+
+        if (target > renderScale) {
+            setRenderScale(target);
+            renderScaleDownSince = -1;
+        } else if (target < renderScale - RENDER_SCALE_STEP) {
+            // Lowering the scale repaints the whole browser, only do it once the browser stayed smaller
+            if (renderScaleDownSince == -1) renderScaleDownSince = frame;
+            else if (frame - renderScaleDownSince >= RENDER_SCALE_DOWN_DELAY) {
+                setRenderScale(target);
+                renderScaleDownSince = -1;
+            }
+        } else {
+            renderScaleDownSince = -1;
+        }
+    }
+
+    /**
+     * Shows this browser on another display, see {@link MCEFBrowserMirror}.
+     * The mirror holds a reference to the browser until it is closed.
+     */
+    public MCEFBrowserMirror createMirror() {
+        if (closed) throw new IllegalStateException("Browser was closed");
+        MCEFBrowserMirror mirror = new MCEFBrowserMirror(this);
+        mirrors.add(mirror);
+        return mirror;
+    }
+
+    /**
+     * @return the amount of open mirrors, see {@link #createMirror()}
+     */
+    public int getMirrorCount() {
+        return mirrors.size();
+    }
+
+    /**
+     * Drops a closed mirror's reference, releasing the browser if it was the last one and the owner is done with it.
+     */
+    void onMirrorClosed(MCEFBrowserMirror mirror) {
+        if (!mirrors.remove(mirror)) return;
+        if (ownerReleased && mirrors.isEmpty()) hand();
+    }
+
+    MCEFBrowserMirror getFocusedMirror() {
+        return focusedMirror;
+    }
+
+    void setFocusedMirror(MCEFBrowserMirror mirror, boolean focus) {
+        if (focus) {
+            focusedMirror = mirror;
+            setFocus(true);
+        } else if (focusedMirror == mirror) {
+            focusedMirror = null;
+            setFocus(false);
+        }
+    }
+
+    /**
+     * Hands the browser back once it isn't needed anymore. Once every {@link MCEFBrowserMirror} is closed too,
+     * it is reset and kept for a later {@link MCEF#createBrowser} call if the {@link MCEFBrowserPool} has room
+     * for it, closed otherwise. Must not be used after this, except through its mirrors. Releasing it again,
+     * or after closing it, does nothing.
+     */
+    public void release() {
+        if (ownerReleased || closed) return;
+        ownerReleased = true;
+        if (mirrors.isEmpty()) hand();
+    }
+
+    /**
+     * Called by {@link MCEFBrowserPool} when handing the browser to a new owner. Until then, a late
+     * {@link #release()} from the previous owner does nothing.
+     */
+    void onAcquired() {
+        ownerReleased = false;
+    }
+
+    private void hand() {
+        if (!MCEF.isInitialized() || !MCEF.getBrowserPool().offer(this)) close();
+    }
+
+    /**
+     * Puts the browser back in the state of a newly created one, used by {@link MCEFBrowserPool}.
+     */
+    void reset() {
+        focusedMirror = null;
+        frameTap.unsubscribeAll();
+        cursorChangeListener.onCursorChange(0);
+        cursorChangeListener = defaultCursorChangeListener();
+        MCEFSettings settings = MCEF.getSettings();
+        useShadowBuffer(settings.isUsingShadowBuffer());
+        maxFrameRate = settings.getMaxFrameRate();
+        frameRateGovernor = settings.isUsingFrameRateGovernor();
+        useRenderScaleController(settings.isUsingRenderScaleController());
+        setRenderScale(1);
+        setRenderScaleLimit(1);
+        useMipmaps(settings.isUsingMipmaps());
+        browserControls = true;
+        firstPaintLatency = null;
+        setFocus(false);
+        setZoomLevel(0);
+        setHidden(true);
+        loadURL(MCEFBrowserPool.IDLE_URL);
+        // The next owner must not see the previous page, the next paint is a full one
+        fullCopyRequired.set(true);
+        runOnRenderThread(() -> {
+            dropPendingUploads();
+            resources.free(graphics);
+            graphics = null;
+            resources.free(popupGraphics);
+            popupGraphics = null;
+            showPopup = false;
+            popupSize = null;
+            popupDrawn = false;
+            lastWidth = 0;
+            lastHeight = 0;
+            renderer.clear();
+        });
+    }
+
+    void awaitFirstPaint(MCEFLatencyHistogram latency) {
+        firstPaintLatency = latency;
+        firstPaintStart = System.nanoTime();
+    }
+
+    /**
+     * Subscribes to the browser's paints, as the rectangles that changed with their pixels, see {@link MCEFFrame}.
+     * Pixels are copied once per paint for all subscribers, only while there are any, and listeners are called
+     * on their own thread so a slow one never holds up painting. Popups are not included.
+     *
+     * @param listener the listener to give frames to
+     * @param mode     what to do with frames arriving while the listener is busy
+     * @return the subscription, to be closed once frames aren't needed anymore
+     */
+    public MCEFFrameSubscription subscribeFrames(MCEFFrameListener listener, MCEFFrameSubscription.Mode mode) {
+        return frameTap.subscribe(listener, mode);
+    }
+
+    /**
+     * @return the audio stream being captured, null if the browser isn't playing audio or
+     * {@link MCEFSettings#isAudioCapture()} is off
+     */
+    public MCEFAudioStream getAudioStream() {
+        return audioStream;
+    }
+
+    /**
+     * @return the stream this one replaces
+     */
+    MCEFAudioStream setAudioStream(MCEFAudioStream stream) {
+        MCEFAudioStream previous = audioStream;
+        audioStream = stream;
+        return previous;
+    }
+
+    /**
+     * Asks CEF to repaint the whole browser, for {@link MCEFFrameTap}.
+     */
+    void repaint() {
+        invalidate();
+    }
+
+    /**
+     * Takes a screenshot from the last painted frame, without popups, see {@link MCEFScreenshots}.
+     *
+     * @param nativeResolution whether the screenshot has the painted size, instead of the browser's size
+     *                         which differs with a {@link #setRenderScale(double) render scale}
+     */
+    @Override
+    public CompletableFuture<BufferedImage> createScreenshot(boolean nativeResolution) {
+        if (nativeResolution) return MCEF.getScreenshots().request(this, 0, 0, true, Function.identity());
+        return MCEF.getScreenshots().request(this, browser_rect_.width, browser_rect_.height, false, Function.identity());
+    }
+
+    /**
+     * Takes a screenshot scaled down to fit in the given size, keeping its aspect ratio, e.g. for thumbnails.
+     */
+    public CompletableFuture<BufferedImage> createScreenshot(int maxWidth, int maxHeight) {
+        return MCEF.getScreenshots().request(this, maxWidth, maxHeight, true, Function.identity());
+    }
+
+    /**
+     * Same as {@link #createScreenshot(int, int)}, encoded as a PNG file on the worker thread.
+     */
+    public CompletableFuture<byte[]> createScreenshotPng(int maxWidth, int maxHeight) {
+        return MCEF.getScreenshots().request(this, maxWidth, maxHeight, true, MCEFScreenshots::toPng);
+    }
+
+    /**
+     * Same as {@link #createScreenshot(int, int)}, as tightly packed RGBA bytes.
+     */
+    public CompletableFuture<ByteBuffer> createScreenshotPixels(int maxWidth, int maxHeight) {
+        return MCEF.getScreenshots().request(this, maxWidth, maxHeight, true, MCEFScreenshots::toRgba);
+    }
+
+    /**
+     * Copies the last painted frame for a screenshot, or waits for the next paint without a shadow buffer.
+     * Called by {@link MCEFScreenshots} on the render thread once the rate limit allows it.
+     */
+    void snapshot(MCEFScreenshots.Request<?> request) {
+        if (resources.isReleased() || hibernationState != Hibernation.NONE) {
+            request.fail(new IllegalStateException("Browser is closed or hibernated"));
+            return;
+        }
+
+        if (graphics != null && lastWidth > 0) {
+            request.complete(copyFrame(graphics, lastWidth, lastHeight), lastWidth, lastHeight);
+            return;
+        }
+
+        if (pendingScreenshots.isEmpty()) screenshotSince = MCEF.getRenderFrame();
+        pendingScreenshots.add(request);
+        screenshotRequested = true;
+        invalidate();
+    }
+
+    /**
+     * Hands a whole painted frame to the screenshots waiting on it, on the render thread.
+     */
+    private void serveScreenshots(ByteBuffer buffer, int width, int height) {
+        if (pendingScreenshots.isEmpty()) return;
+        screenshotRequested = false;
+        int[] pixels = copyFrame(buffer, width, height);
+        for (MCEFScreenshots.Request<?> request : pendingScreenshots)
+            request.complete(pendingScreenshots.size() == 1 ? pixels : pixels.clone(), width, height);
+        pendingScreenshots.clear();
+    }
+
+    private void failScreenshots(Throwable t) {
+        screenshotRequested = false;
+        for (MCEFScreenshots.Request<?> request : pendingScreenshots)
+            request.fail(t);
+        pendingScreenshots.clear();
+    }
+
+    /**
+     * @return the pixels of a frame as ARGB ints, which is how BGRA bytes read as little endian ints
+     */
+    private static int[] copyFrame(ByteBuffer buffer, int width, int height) {
+        int[] pixels = new int[width * height];
+        ByteBuffer src = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        src.position(0).limit(pixels.length * 4);
+        src.asIntBuffer().get(pixels);
+        return pixels;
+    }
+
     public MCEFDragContext getDragContext() {
         return dragContext;
     }
@@ -127,39 +997,75 @@ public class MCEFBrowser extends CefBrowserOsr {
     @Override
     public void onPopupShow(CefBrowser browser, boolean show) {
         super.onPopupShow(browser, show);
-        showPopup = show;
-        if (!show) {
-            Minecraft.getInstance().submit(() -> {
-                onPaint(browser, false, new Rectangle[]{popupSize}, graphics, lastWidth, lastHeight);
-            });
-            popupSize = null;
-            popupDrawn = false;
-            popupGraphics = null;
-        }
+        runOnRenderThread(() -> {
+            showPopup = show;
+            if (!show) {
+                // Puts back the pixels that were under the popup, no repaint needed
+                renderer.hidePopup();
+                erasePopup();
+                popupSize = null;
+                popupDrawn = false;
+            }
+        });
     }
 
     @Override
     public void onPopupSize(CefBrowser browser, Rectangle size) {
         super.onPopupSize(browser, size);
-        popupSize = size;
-        this.popupGraphics = ByteBuffer.allocateDirect(
-                size.width * size.height * 4
-        );
+        runOnRenderThread(() -> {
+            // Moves an already painted popup, a resized one gets painted again by CEF
+            if (popupGraphics != null && showPopup && popupDrawn) {
+                restoreUnderPopup();
+                popupSize = size;
+                drawPopup();
+                return;
+            }
+            popupSize = size;
+            if (popupCompositing && showPopup && popupDrawn) renderer.showPopup(toPaintPixels(size));
+        });
+    }
+
+    public boolean usingPopupCompositing() {
+        return popupCompositing;
     }
 
     /**
-     * Draws any existing popup menu to the browser's graphics
+     * Popups, like the list of a select element, are kept in their own texture, see {@link MCEFRenderer#getPopupTextureID()}.
+     * With popup compositing they are also copied into the browser's texture on the GPU, or uploaded over it from
+     * {@link #popupGraphics} after every paint where the GPU can't copy between textures. Without it, mods have to draw
+     * the popup texture themselves at {@link #getPopupBounds()}.
+     *
+     * @param popupCompositing whether popups should be copied into the browser's texture
+     * @return the browser instance
      */
-    protected void drawPopup() {
-        if (showPopup && popupSize != null && popupDrawn) {
-            RenderSystem.bindTexture(renderer.getTextureID());
-            if (renderer.isTransparent()) RenderSystem.enableBlend();
-
-            RenderSystem.pixelStore(GL_UNPACK_ROW_LENGTH, popupSize.width);
-            GlStateManager._pixelStore(GL_UNPACK_SKIP_PIXELS, 0);
-            GlStateManager._pixelStore(GL_UNPACK_SKIP_ROWS, 0);
-            renderer.onPaint(this.popupGraphics, popupSize.x, popupSize.y, popupSize.width, popupSize.height);
-        }
+    public MCEFBrowser usePopupCompositing(boolean popupCompositing) {
+        this.popupCompositing = popupCompositing;
+        runOnRenderThread(() -> {
+            if (!popupCompositing) {
+                renderer.hidePopup();
+                erasePopup();
+            } else if (showPopup && popupDrawn && popupSize != null) renderer.showPopup(toPaintPixels(popupSize));
+        });
+        return this;
+    }
+
+    /**
+     * @return where the popup is, in view coordinates, or null if no popup is visible
+     */
+    public Rectangle getPopupBounds() {
+        Rectangle bounds = popupSize;
+        return showPopup && popupDrawn && bounds != null ? new Rectangle(bounds) : null;
+    }
+
+    /**
+     * Converts a rectangle in view coordinates, like the popup bounds, to the pixels CEF paints at the current render scale.
+     */
+    protected Rectangle toPaintPixels(Rectangle rect) {
+        double scale = getScaleFactor();
+        if (scale == 1) return rect;
+        int x = (int) Math.floor(rect.x * scale), y = (int) Math.floor(rect.y * scale);
+        return new Rectangle(x, y, (int) Math.ceil((rect.x + rect.width) * scale) - x,
+                (int) Math.ceil((rect.y + rect.height) * scale) - y);
     }
 
     /**
@@ -173,70 +1079,302 @@ public class MCEFBrowser extends CefBrowserOsr {
      * @param height    the height of the browser
      */
     public static void store(ByteBuffer srcBuffer, ByteBuffer dstBuffer, Rectangle dirty, int width, int height) {
-        for (int y = dirty.y; y < dirty.height + dirty.y; y++) {
-            dstBuffer.position((y * width + dirty.x) * 4);
-            srcBuffer.position((y * width + dirty.x) * 4);
-            srcBuffer.limit(dirty.width * 4 + (y * width + dirty.x) * 4);
-            dstBuffer.put(srcBuffer);
-            srcBuffer.position(0).limit(srcBuffer.capacity());
-        }
-        dstBuffer.position(0).limit(dstBuffer.capacity());
+        MCEFPixelCopy.copy(srcBuffer, dstBuffer, dirty, width);
     }
 
     // Graphics
     @Override
     public void onPaint(CefBrowser browser, boolean popup, Rectangle[] dirtyRects, ByteBuffer buffer, int width, int height) {
-        if (!popup && (width != lastWidth || height != lastHeight)) {
+        if (!popup && frameTap.hasSubscribers()) frameTap.publish(buffer, dirtyRects, width, height);
+
+        if (RenderSystem.isOnRenderThread()) {
+            paint(popup, dirtyRects, buffer, width, height);
+            if (!popup) serveScreenshots(buffer, width, height);
+            return;
+        }
+
+        // Called from a dedicated message pump thread, CEF's buffer is only valid until this returns
+        ByteBuffer copy = resources.takePaintBuffer(buffer.capacity());
+
+        // A full repaint happens on resize or when the shadow buffer needs filling, which needs the whole buffer.
+        // Only decided from state this thread owns, render thread state may be stale here
+        boolean required = !popup && fullCopyRequired.getAndSet(false);
+        boolean whole = !popup && (required || width != pumpWidth || height != pumpHeight || screenshotRequested);
+        Rectangle[] rects;
+        if (whole) {
+            rects = dirtyRects;
+            MCEFPixelCopy.copy(buffer, copy, new Rectangle(0, 0, width, height), width);
+            pumpWidth = width;
+            pumpHeight = height;
+        } else {
+            // Coalesced rectangles can cover pixels outside the dirty ones, copy what actually gets uploaded
+            rects = rectCoalescer.coalesce(dirtyRects, width, height);
+            for (Rectangle rect : rects)
+                MCEFPixelCopy.copy(buffer, copy, rect, width);
+        }
+
+        runOnRenderThread(() -> {
+            paint(popup, rects, copy, width, height, !whole);
+            if (whole) serveScreenshots(copy, width, height);
+            resources.recyclePaintBuffer(copy);
+        });
+    }
+
+    /**
+     * Uploads a paint to the GPU, on the render thread.
+     * Parameters are the same as {@link #onPaint(CefBrowser, boolean, Rectangle[], ByteBuffer, int, int)}.
+     */
+    protected void paint(boolean popup, Rectangle[] dirtyRects, ByteBuffer buffer, int width, int height) {
+        paint(popup, dirtyRects, buffer, width, height, false);
+    }
+
+    /**
+     * @param partial whether the buffer only holds the given rectangles, which are then already coalesced,
+     *                as copied on the message pump thread
+     */
+    private void paint(boolean popup, Rectangle[] dirtyRects, ByteBuffer buffer, int width, int height, boolean partial) {
+        // Paints can still come in between close() and CEF actually closing the browser
+        if (resources.isReleased()) return;
+
+        if (firstPaintLatency != null && !popup) {
+            firstPaintLatency.record(System.nanoTime() - firstPaintStart);
+            firstPaintLatency = null;
+        }
+
+        boolean full = !popup && (width != lastWidth || height != lastHeight || (shadowBuffer && graphics == null));
+        if (full && partial) {
+            // Copied on the pump thread before it could know a full paint was needed, have CEF paint everything again
+            fullCopyRequired.set(true);
+            invalidate();
+            return;
+        }
+        // Don't update graphics if the renderer is not initialized, checked before the paint begins so it always ends
+        if (!popup && !full && !renderer.isInitialized()) return;
+
+        renderer.beginPaint();
+        if (popup) {
+            paintPopup(partial ? dirtyRects : rectCoalescer.coalesce(dirtyRects, width, height), buffer, width, height);
+        } else if (full) {
+            if (compactStorage && (long) width * height < (long) lastWidth * lastHeight) {
+                // Downscaled by the memory budget, don't keep buffers sized for the larger paints
+                compactStorage = false;
+                renderer.compact();
+                resources.free(graphics);
+                graphics = null;
+                dropPendingUploads();
+                resources.clearPaintBuffers();
+            }
+
             // Copy buffer
-            graphics = ByteBuffer.allocateDirect(buffer.capacity());
-            graphics.position(0).limit(graphics.capacity());
-            graphics.put(buffer);
-            graphics.position(0);
-            buffer.position(0);
+            if (shadowBuffer) {
+                // Paint buffers can be larger than the paint, only copy the paint itself
+                ByteBuffer src = buffer.duplicate();
+                src.position(0).limit(width * height * 4);
+                graphics = resources.reallocate(graphics, width * height * 4);
+                graphics.put(src);
+                graphics.position(0);
+            }
 
-            // Draw
+            // Draw, anything still waiting on the upload scheduler is covered
+            cancelPendingUploads();
+            if (stagingBuffer != null) {
+                ByteBuffer src = buffer.duplicate();
+                src.position(0).limit(width * height * 4);
+                stagingBuffer = resources.reallocate(stagingBuffer, width * height * 4);
+                stagingBuffer.put(src);
+                stagingBuffer.position(0);
+            }
             renderer.onPaint(buffer, width, height);
             lastWidth = width;
             lastHeight = height;
+            drawPopup();
         } else {
-            // Don't update graphics if the renderer is not initialized
-            if (renderer.getTextureID() == 0) return;
-
-            // Update sub-rects
-            if (!popup) {
-                // Graphics will be updated later if it's a popup
-                RenderSystem.bindTexture(renderer.getTextureID());
-                if (renderer.isTransparent()) RenderSystem.enableBlend();
-                RenderSystem.pixelStore(GL_UNPACK_ROW_LENGTH, width);
-            } else popupDrawn = true;
-
-            for (Rectangle dirtyRect : dirtyRects) {
-                // Check that the popup isn't being cleared from the image
-                if (buffer != graphics)
-                    // Due to how CEF handles popups, the graphics of the popup and the graphics of the browser itself need to be stored separately
-                    store(buffer, popup ? popupGraphics : graphics, dirtyRect, width, height);
-
-                // Graphics will be updated later if it's a popup
-                if (!popup) {
-                    // Upload to the GPU
-                    GlStateManager._pixelStore(GL_UNPACK_SKIP_PIXELS, dirtyRect.x);
-                    GlStateManager._pixelStore(GL_UNPACK_SKIP_ROWS, dirtyRect.y);
-                    renderer.onPaint(buffer, dirtyRect.x, dirtyRect.y, dirtyRect.width, dirtyRect.height);
+            Rectangle[] rects = partial ? dirtyRects : rectCoalescer.coalesce(dirtyRects, width, height);
+            MCEFUploadScheduler scheduler = MCEF.getUploadScheduler();
+            boolean defer = scheduler.isEnabled();
+            for (Rectangle dirtyRect : rects) {
+                if (graphics != null && buffer != graphics)
+                    store(buffer, graphics, dirtyRect, width, height);
+
+                if (defer) {
+                    if (stagingBuffer == null) stagingBuffer = resources.reallocate(null, width * height * 4);
+                    store(buffer, stagingBuffer, dirtyRect, width, height);
+                } else {
+                    // Upload to the GPU, then put back the popup if the upload went over it
+                    renderer.onPaint(buffer, width, dirtyRect.x, dirtyRect.y, dirtyRect.x, dirtyRect.y, dirtyRect.width, dirtyRect.height);
+                    renderer.updatePopup(dirtyRect);
                 }
             }
+
+            if (defer) {
+                if (pendingUploads.isEmpty()) pendingSinceFrame = MCEF.getRenderFrame();
+                // Merge with what is still waiting, the pixels of both are up to date in the staging buffer
+                Collections.addAll(pendingUploads, rects);
+                Rectangle[] merged = pendingCoalescer.coalesce(pendingUploads.toArray(new Rectangle[0]), width, height);
+                pendingUploads.clear();
+                Collections.addAll(pendingUploads, merged);
+                scheduler.schedule(this);
+            } else if (!pendingUploads.isEmpty()) {
+                // Scheduling was turned off with uploads still waiting, rectangles uploaded just now may overlap them
+                for (Rectangle dirtyRect : rects)
+                    store(buffer, stagingBuffer, dirtyRect, width, height);
+            }
+            if (!defer) drawPopup();
+        }
+        renderer.endPaint();
+    }
+
+    /**
+     * Uploads rectangles waiting on the {@link MCEFUploadScheduler}, in order.
+     *
+     * @param budget the most bytes to upload
+     * @param force  whether to upload the first rectangle even if it exceeds the budget
+     * @return the amount of bytes uploaded
+     */
+    long uploadPending(long budget, boolean force) {
+        if (resources.isReleased()) {
+            pendingUploads.clear();
+            return 0;
+        }
+
+        long uploaded = 0;
+        renderer.beginPaint();
+        Iterator<Rectangle> iterator = pendingUploads.iterator();
+        while (iterator.hasNext()) {
+            Rectangle rect = iterator.next();
+            long bytes = (long) rect.width * rect.height * 4;
+            if (uploaded + bytes > budget && !(force && uploaded == 0)) break;
+
+            renderer.onPaint(stagingBuffer, lastWidth, rect.x, rect.y, rect.x, rect.y, rect.width, rect.height);
+            renderer.updatePopup(rect);
+            uploaded += bytes;
+            iterator.remove();
+        }
+        if (uploaded > 0) drawPopup();
+        renderer.endPaint();
+        return uploaded;
+    }
+
+    /**
+     * Forgets about uploads waiting on the {@link MCEFUploadScheduler} and frees the staging buffer.
+     */
+    private void dropPendingUploads() {
+        cancelPendingUploads();
+        resources.free(stagingBuffer);
+        stagingBuffer = null;
+    }
+
+    /**
+     * Forgets about uploads waiting on the {@link MCEFUploadScheduler}, keeping the staging buffer for later ones.
+     */
+    private void cancelPendingUploads() {
+        pendingUploads.clear();
+        if (MCEF.isInitialized()) MCEF.getUploadScheduler().cancel(this);
+    }
+
+    /**
+     * Uploads a popup paint to the popup texture, and copies it into the browser's texture with popup compositing.
+     *
+     * @param rects the rectangles to upload, already coalesced
+     */
+    protected void paintPopup(Rectangle[] rects, ByteBuffer buffer, int width, int height) {
+        if (!renderer.isInitialized()) return;
+
+        renderer.onPopupPaint(buffer, width, height, rects);
+        if (popupCompositing && !MCEFRenderer.isPopupCompositingSupported()) {
+            if (popupGraphics == null || width != popupGraphicsWidth || height != popupGraphicsHeight) {
+                popupGraphics = resources.reallocate(popupGraphics, width * height * 4);
+                popupGraphicsWidth = width;
+                popupGraphicsHeight = height;
+            }
+            for (Rectangle rect : rects)
+                store(buffer, popupGraphics, rect, width, height);
+            popupDrawn = true;
+            drawPopup();
+            return;
         }
+        if (popupCompositing && showPopup && popupSize != null) {
+            if (!popupDrawn) {
+                renderer.showPopup(toPaintPixels(popupSize));
+            } else {
+                for (Rectangle rect : rects)
+                    renderer.compositePopup(rect);
+            }
+        }
+        popupDrawn = true;
+    }
+
+    /**
+     * Uploads the popup over the browser's pixels from {@link #popupGraphics}, when popups are composited on the CPU.
+     * Page paints under the popup overwrite it, so this runs after each of them.
+     */
+    protected void drawPopup() {
+        if (!showPopup || popupSize == null || !popupDrawn || popupGraphics == null) return;
+        Rectangle bounds = toPaintPixels(popupSize);
+        Rectangle visible = bounds.intersection(new Rectangle(0, 0, renderer.getWidth(), renderer.getHeight()))
+                .intersection(new Rectangle(bounds.x, bounds.y, popupGraphicsWidth, popupGraphicsHeight));
+        if (visible.isEmpty()) return;
+        renderer.onPaint(popupGraphics, popupGraphicsWidth, visible.x - bounds.x, visible.y - bounds.y,
+                visible.x, visible.y, visible.width, visible.height);
+    }
 
-        // Upload popup to GPU, must be fully drawn every time paint is called
-        drawPopup();
+    /**
+     * Puts back the pixels under a popup drawn by {@link #drawPopup()} and forgets its pixels.
+     */
+    private void erasePopup() {
+        if (popupGraphics == null) return;
+        restoreUnderPopup();
+        resources.free(popupGraphics);
+        popupGraphics = null;
+    }
+
+    /**
+     * Puts back the pixels under a popup drawn by {@link #drawPopup()} from the shadow buffer,
+     * or lets CEF repaint them without one.
+     */
+    private void restoreUnderPopup() {
+        if (popupSize == null) return;
+        if (graphics == null) {
+            invalidate();
+            return;
+        }
+        Rectangle rect = toPaintPixels(popupSize).intersection(new Rectangle(0, 0, lastWidth, lastHeight));
+        if (!rect.isEmpty()) renderer.onPaint(graphics, lastWidth, rect.x, rect.y, rect.x, rect.y, rect.width, rect.height);
     }
 
+    /**
+     * Resizes the browser. CEF only gets told about the new size once it has stayed the same for
+     * {@link MCEFSettings#getResizeDebounceFrames()} render frames, or {@link #MAX_RESIZE_DELAY} frames after the
+     * last resize it was told about. Resizing every frame, e.g. while a screen is dragged or animated, then doesn't
+     * reallocate and repaint the whole browser every frame. The first resize in a while goes through on the next frame.
+     */
     public void resize(int width, int height) {
+        resizeRequests++;
+        // Nothing to wait on before the native browser exists, its size is read when it gets created
+        if (getNativeRef("CefBrowser") == 0) {
+            applyResize(width, height);
+            return;
+        }
+
+        if (resizeWidth == -1 && width == browser_rect_.width && height == browser_rect_.height) return;
+        if (width != resizeWidth || height != resizeHeight) resizeRequestFrame = MCEF.getRenderFrame();
+        resizeWidth = width;
+        resizeHeight = height;
+    }
+
+    private void applyResize(int width, int height) {
+        resizeWidth = resizeHeight = -1;
+        lastResizeFrame = MCEF.getRenderFrame();
+        if (width == browser_rect_.width && height == browser_rect_.height) return;
         browser_rect_.setBounds(0, 0, width, height);
         wasResized(width, height);
+        appliedResizes++;
     }
 
     // Inputs
     public void sendKeyPress(int keyCode, long scanCode, int modifiers) {
+        onInput();
+
         if (browserControls) {
             if (modifiers == GLFW_MOD_CONTROL) {
                 if (keyCode == GLFW_KEY_R) {
@@ -269,6 +1407,8 @@ public class MCEFBrowser extends CefBrowserOsr {
     }
 
     public void sendKeyRelease(int keyCode, long scanCode, int modifiers) {
+        onInput();
+
         if (browserControls) {
             if (modifiers == GLFW_MOD_CONTROL) {
                 if (keyCode == GLFW_KEY_R) return;
@@ -287,6 +1427,8 @@ public class MCEFBrowser extends CefBrowserOsr {
     }
 
     public void sendKeyTyped(char c, int modifiers) {
+        onInput();
+
         if (browserControls) {
             if (modifiers == GLFW_MOD_CONTROL) {
                 if ((int) c == GLFW_KEY_R) return;
@@ -304,6 +1446,8 @@ public class MCEFBrowser extends CefBrowserOsr {
     }
 
     public void sendMouseMove(int mouseX, int mouseY) {
+        onInput();
+
         CefMouseEvent e = new CefMouseEvent(CefMouseEvent.MOUSE_MOVED, mouseX, mouseY, 0, 0, dragContext.getVirtualModifiers(btnMask));
         sendMouseEvent(e);
 
@@ -313,6 +1457,8 @@ public class MCEFBrowser extends CefBrowserOsr {
 
     // TODO: it may be necessary to add modifiers here
     public void sendMousePress(int mouseX, int mouseY, int button) {
+        onInput();
+
         // for some reason, middle and right are swapped in MC
         if (button == 1) button = 2;
         else if (button == 2) button = 1;
@@ -327,6 +1473,8 @@ public class MCEFBrowser extends CefBrowserOsr {
 
     // TODO: it may be necessary to add modifiers here
     public void sendMouseRelease(int mouseX, int mouseY, int button) {
+        onInput();
+
         // For some reason, middle and right are swapped in MC
         if (button == 1) button = 2;
         else if (button == 2) button = 1;
@@ -348,6 +1496,8 @@ public class MCEFBrowser extends CefBrowserOsr {
 
     // TODO: smooth scrolling
     public void sendMouseWheel(int mouseX, int mouseY, double amount, int modifiers) {
+        onInput();
+
         if (browserControls) {
             if ((modifiers & GLFW_MOD_CONTROL) != 0) {
                 if (amount > 0) {
@@ -377,8 +1527,10 @@ public class MCEFBrowser extends CefBrowserOsr {
     // Drag & drop
     @Override
     public boolean startDragging(CefBrowser browser, CefDragData dragData, int mask, int x, int y) {
-        dragContext.startDragging(dragData, mask);
-        this.dragTargetDragEnter(dragContext.getDragData(), new Point(x, y), btnMask, dragContext.getMask());
+        runOnRenderThread(() -> {
+            dragContext.startDragging(dragData, mask);
+            this.dragTargetDragEnter(dragContext.getDragData(), new Point(x, y), btnMask, dragContext.getMask());
+        });
         // Indicates to CEF to not handle the drag event natively
         // reason: native drag handling doesn't work with off screen rendering
         return false;
@@ -386,9 +1538,11 @@ public class MCEFBrowser extends CefBrowserOsr {
 
     @Override
     public void updateDragCursor(CefBrowser browser, int operation) {
-        if (dragContext.updateCursor(operation))
-            // If the cursor to display for the drag event changes, then update the cursor
-            this.onCursorChange(this, dragContext.getVirtualCursor(dragContext.getActualCursor()));
+        runOnRenderThread(() -> {
+            if (dragContext.updateCursor(operation))
+                // If the cursor to display for the drag event changes, then update the cursor
+                this.onCursorChange(this, dragContext.getVirtualCursor(dragContext.getActualCursor()));
+        });
 
         super.updateDragCursor(browser, operation);
     }
@@ -413,23 +1567,59 @@ public class MCEFBrowser extends CefBrowserOsr {
 
     // Closing
     public void close() {
-        renderer.cleanup();
+        closed = true;
+        // Mirrors can't keep drawing a deleted texture
+        for (MCEFBrowserMirror mirror : new ArrayList<>(mirrors))
+            mirror.onBrowserClosed();
+        mirrors.clear();
+        focusedMirror = null;
+        MCEF.untrackBrowser(this);
+        runOnRenderThread(() -> {
+            dropPendingUploads();
+            failScreenshots(new IllegalStateException("Browser was closed"));
+        });
+        resources.close();
+        frameTap.close();
+        MCEFAudioStream stream = audioStream;
+        if (stream != null) stream.stop();
         cursorChangeListener.onCursorChange(0);
         super.close(true);
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        Minecraft.getInstance().submit(renderer::cleanup);
-        super.finalize();
+    /**
+     * @return the estimated GPU memory used by this browser, see {@link MCEFRenderer#getGpuBytes()}
+     */
+    public long getGpuBytes() {
+        return renderer.getGpuBytes();
+    }
+
+    /**
+     * @return the amount of bytes this browser has allocated off-heap, not counting CEF's own buffers
+     */
+    public long getOffHeapBytes() {
+        return resources.getBytes();
     }
 
     // Cursor handling
     @Override
     public boolean onCursorChange(CefBrowser browser, int cursorType) {
-        cursorType = dragContext.getVirtualCursor(cursorType);
-        cursorChangeListener.onCursorChange(cursorType);
-        return super.onCursorChange(browser, cursorType);
+        int virtualCursor = dragContext.getVirtualCursor(cursorType);
+        runOnRenderThread(() -> cursorChangeListener.onCursorChange(virtualCursor));
+        return super.onCursorChange(browser, virtualCursor);
+    }
+
+    /**
+     * Runs a task on the render thread; immediately when CEF is pumped from the render thread,
+     * handed over through {@link MCEFMessagePump#runOnRenderThread(Runnable)} when it isn't.
+     */
+    protected static void runOnRenderThread(Runnable task) {
+        if (RenderSystem.isOnRenderThread()) task.run();
+        else if (MCEF.isInitialized()) MCEF.getMessagePump().runOnRenderThread(task);
+        else Minecraft.getInstance().execute(task);
+    }
+
+    private enum Hibernation {
+        NONE, SAVING, CLOSING, HIBERNATED
     }
 
     public void setCursor(CefCursorType cursorType) {
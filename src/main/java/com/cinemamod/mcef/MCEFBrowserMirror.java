@@ -0,0 +1,136 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+/**
+ * One of many displays of the same browser, e.g. the same scoreboard on several in-world screens.
+ * Every mirror draws the browser's own texture, so a single CEF browser and a single upload serve them all.
+ * <p>
+ * Mirrors are created with {@link MCEFBrowser#createMirror()} and each holds a reference to the browser,
+ * which is only released once its owner called {@link MCEFBrowser#release()} and every mirror was closed.
+ * Closing the browser itself closes its mirrors, which then have no texture.
+ * Input sent through a mirror only reaches the browser while that mirror has focus, see {@link #setFocus(boolean)}.
+ */
+public class MCEFBrowserMirror implements AutoCloseable {
+    private final MCEFBrowser browser;
+    private boolean closed = false;
+
+    MCEFBrowserMirror(MCEFBrowser browser) {
+        this.browser = browser;
+    }
+
+    public MCEFBrowser getBrowser() {
+        return browser;
+    }
+
+    /**
+     * Same as {@link MCEFRenderer#getTextureID()}, marks the shared texture as sampled. 0 once closed.
+     */
+    public int getTextureID() {
+        return closed ? 0 : browser.getRenderer().getTextureID();
+    }
+
+    /**
+     * Same as {@link MCEFRenderer#getTiles()}, marks the shared tiles as sampled. Null once closed.
+     */
+    public MCEFTileGrid getTiles() {
+        return closed ? null : browser.getRenderer().getTiles();
+    }
+
+    public float getMaxU() {
+        return browser.getRenderer().getMaxU();
+    }
+
+    public float getMaxV() {
+        return browser.getRenderer().getMaxV();
+    }
+
+    /**
+     * Reports how many pixels of the display this mirror covers, see {@link MCEFBrowser#reportScreenSize(double, double)}.
+     * The browser renders for the largest size reported in a frame.
+     */
+    public void reportScreenSize(double width, double height) {
+        if (!closed) browser.reportScreenSize(width, height);
+    }
+
+    /**
+     * Gives this mirror the browser's focus, taking it from the mirror that had it, or gives it up.
+     */
+    public void setFocus(boolean focus) {
+        if (closed) return;
+        browser.setFocusedMirror(this, focus);
+    }
+
+    public boolean isFocused() {
+        return !closed && browser.getFocusedMirror() == this && browser.isFocused();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Inputs, dropped unless this mirror has focus
+    public void sendKeyPress(int keyCode, long scanCode, int modifiers) {
+        if (isFocused()) browser.sendKeyPress(keyCode, scanCode, modifiers);
+    }
+
+    public void sendKeyRelease(int keyCode, long scanCode, int modifiers) {
+        if (isFocused()) browser.sendKeyRelease(keyCode, scanCode, modifiers);
+    }
+
+    public void sendKeyTyped(char c, int modifiers) {
+        if (isFocused()) browser.sendKeyTyped(c, modifiers);
+    }
+
+    public void sendMouseMove(int mouseX, int mouseY) {
+        if (isFocused()) browser.sendMouseMove(mouseX, mouseY);
+    }
+
+    public void sendMousePress(int mouseX, int mouseY, int button) {
+        if (isFocused()) browser.sendMousePress(mouseX, mouseY, button);
+    }
+
+    public void sendMouseRelease(int mouseX, int mouseY, int button) {
+        if (isFocused()) browser.sendMouseRelease(mouseX, mouseY, button);
+    }
+
+    public void sendMouseWheel(int mouseX, int mouseY, double amount, int modifiers) {
+        if (isFocused()) browser.sendMouseWheel(mouseX, mouseY, amount, modifiers);
+    }
+
+    /**
+     * Stops mirroring, dropping this mirror's reference to the browser. Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        if (browser.getFocusedMirror() == this) browser.setFocusedMirror(this, false);
+        closed = true;
+        browser.onMirrorClosed(this);
+    }
+
+    /**
+     * Called when the browser is closed while this mirror is open.
+     */
+    void onBrowserClosed() {
+        closed = true;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.mojang.blaze3d.platform.Window;
+import net.minecraft.client.Minecraft;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps idle browsers around so that {@link MCEF#createBrowser} doesn't have to wait on a new renderer process.
+ * <p>
+ * Idle browsers sit hidden on {@code about:blank}, sized to the game window, with their texture created.
+ * Opaque and transparent browsers are pooled separately, up to {@link MCEFSettings#getBrowserPoolSize()} and
+ * {@link MCEFSettings#getTransparentBrowserPoolSize()} respectively. The pool is refilled one browser at a time,
+ * at most every {@link #REFILL_INTERVAL} frames, so that renderer processes aren't spawned in bursts.
+ * <p>
+ * Browsers are returned to the pool through {@link MCEFBrowser#release()}. Must only be used from the render thread.
+ */
+public final class MCEFBrowserPool {
+    public static final String IDLE_URL = "about:blank";
+    /**
+     * The least amount of render frames between two browsers being created to refill the pool.
+     */
+    public static final int REFILL_INTERVAL = 10;
+
+    private final Deque<MCEFBrowser> opaque = new ArrayDeque<>();
+    private final Deque<MCEFBrowser> transparent = new ArrayDeque<>();
+    private final MCEFLatencyHistogram hitLatency = new MCEFLatencyHistogram();
+    private final MCEFLatencyHistogram missLatency = new MCEFLatencyHistogram();
+    private long lastRefillFrame = Long.MIN_VALUE / 2;
+    private long hits = 0;
+    private long misses = 0;
+
+    MCEFBrowserPool() {
+    }
+
+    /**
+     * @return the amount of idle browsers of the given kind
+     */
+    public int getIdleCount(boolean transparent) {
+        return idle(transparent).size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of {@link MCEF#createBrowser} calls served from the pool, from 0 to 1
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the time between browsers being handed out from the pool and their first paint
+     */
+    public MCEFLatencyHistogram getHitLatency() {
+        return hitLatency;
+    }
+
+    /**
+     * @return the time between browsers being created because the pool was empty and their first paint
+     */
+    public MCEFLatencyHistogram getMissLatency() {
+        return missLatency;
+    }
+
+    /**
+     * Takes an idle browser out of the pool and points it at the given URL.
+     *
+     * @return the browser, or null if there was no idle browser of that kind
+     */
+    MCEFBrowser acquire(String url, boolean transparent) {
+        MCEFBrowser browser = idle(transparent).poll();
+        if (browser == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        browser.pooled = false;
+        browser.onAcquired();
+        browser.touch();
+        browser.awaitFirstPaint(hitLatency);
+        browser.setHidden(false);
+        browser.loadURL(url);
+        return browser;
+    }
+
+    /**
+     * Called for browsers created because the pool was empty.
+     */
+    void onMiss(MCEFBrowser browser) {
+        browser.awaitFirstPaint(missLatency);
+    }
+
+    /**
+     * Resets a released browser and keeps it, if there is room for it.
+     *
+     * @return false if the pool is full, in which case the caller should close the browser
+     */
+    boolean offer(MCEFBrowser browser) {
+        boolean transparent = browser.getRenderer().isTransparent();
+        Deque<MCEFBrowser> idle = idle(transparent);
+        if (browser.pooled) return true;
+        if (idle.size() >= targetSize(transparent) || browser.isHibernated()) return false;
+        browser.reset();
+        browser.pooled = true;
+        idle.add(browser);
+        return true;
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()}, creates a browser if the pool is below its target size.
+     */
+    void onRender(long frame) {
+        if (frame - lastRefillFrame < REFILL_INTERVAL) return;
+
+        // Shrink right away when the target size was lowered
+        trim(false);
+        trim(true);
+
+        boolean transparent;
+        if (opaque.size() < targetSize(false)) transparent = false;
+        else if (this.transparent.size() < targetSize(true)) transparent = true;
+        else return;
+
+        Window window = Minecraft.getInstance().getWindow();
+        MCEFBrowser browser = new MCEFBrowser(MCEF.getClient(), IDLE_URL, transparent);
+        browser.setCloseAllowed();
+        browser.createImmediately();
+        browser.resize(Math.max(1, window.getWidth()), Math.max(1, window.getHeight()));
+        browser.setHidden(true);
+        browser.pooled = true;
+        idle(transparent).add(browser);
+        lastRefillFrame = frame;
+    }
+
+    /**
+     * Closes every idle browser.
+     */
+    void clear() {
+        for (MCEFBrowser browser : opaque)
+            browser.close();
+        for (MCEFBrowser browser : transparent)
+            browser.close();
+        opaque.clear();
+        transparent.clear();
+    }
+
+    private void trim(boolean transparent) {
+        Deque<MCEFBrowser> idle = idle(transparent);
+        while (idle.size() > targetSize(transparent))
+            idle.poll().close();
+    }
+
+    private Deque<MCEFBrowser> idle(boolean transparent) {
+        return transparent ? this.transparent : opaque;
+    }
+
+    private static int targetSize(boolean transparent) {
+        MCEFSettings settings = MCEF.getSettings();
+        return Math.max(0, transparent ? settings.getTransparentBrowserPoolSize() : settings.getBrowserPoolSize());
+    }
+}
@@ -26,28 +26,33 @@ import org.cef.browser.CefBrowser;
 import org.cef.browser.CefFrame;
 import org.cef.callback.CefContextMenuParams;
 import org.cef.callback.CefMenuModel;
+import org.cef.handler.CefAudioHandler;
 import org.cef.handler.CefContextMenuHandler;
 import org.cef.handler.CefDisplayHandler;
 import org.cef.handler.CefLoadHandler;
+import org.cef.misc.CefAudioParameters;
 import org.cef.network.CefRequest;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A wrapper around {@link CefClient}
  */
-public class MCEFClient implements CefLoadHandler, CefContextMenuHandler, CefDisplayHandler {
+public class MCEFClient implements CefLoadHandler, CefContextMenuHandler, CefDisplayHandler, CefAudioHandler {
     private final CefClient handle;
     private final List<CefLoadHandler> loadHandlers = new ArrayList<>();
     private final List<CefContextMenuHandler> contextMenuHandlers = new ArrayList<>();
     private final List<CefDisplayHandler> displayHandlers = new ArrayList<>();
+    private final List<CefAudioHandler> audioHandlers = new ArrayList<>();
 
     public MCEFClient(CefClient cefClient) {
         handle = cefClient;
         cefClient.addLoadHandler(this);
         cefClient.addContextMenuHandler(this);
         cefClient.addDisplayHandler(this);
+        cefClient.addAudioHandler(this);
     }
 
     public CefClient getHandle() {
@@ -71,6 +76,7 @@ public class MCEFClient implements CefLoadHandler, CefContextMenuHandler, CefDis
 
     @Override
     public void onLoadEnd(CefBrowser browser, CefFrame frame, int httpStatusCode) {
+        if (browser instanceof MCEFBrowser) ((MCEFBrowser) browser).onLoadEnd(frame);
         for (CefLoadHandler loadHandler : loadHandlers) loadHandler.onLoadEnd(browser, frame, httpStatusCode);
     }
 
@@ -133,6 +139,7 @@ public class MCEFClient implements CefLoadHandler, CefContextMenuHandler, CefDis
 
     @Override
     public boolean onConsoleMessage(CefBrowser browser, CefSettings.LogSeverity level, String message, String source, int line) {
+        if (browser instanceof MCEFBrowser && ((MCEFBrowser) browser).onConsoleMessage(message)) return true;
         for (CefDisplayHandler displayHandler : displayHandlers)
             if (displayHandler.onConsoleMessage(browser, level, message, source, line))
                 return true;
@@ -146,4 +153,50 @@ public class MCEFClient implements CefLoadHandler, CefContextMenuHandler, CefDis
                 return true;
         return false;
     }
+
+    /**
+     * Audio handlers are called on CEF's thread, with the same buffer for every packet of a stream.
+     * Browser audio is only handed to the client when {@link MCEFSettings#isAudioCapture()} is on or a handler asks
+     * for it in {@link CefAudioHandler#getAudioParameters(CefBrowser, CefAudioParameters)}, it's played by CEF otherwise.
+     */
+    public void addAudioHandler(CefAudioHandler handler) {
+        audioHandlers.add(handler);
+    }
+
+    @Override
+    public boolean getAudioParameters(CefBrowser browser, CefAudioParameters params) {
+        boolean capture = MCEF.getAudio().getAudioParameters(browser, params);
+        for (CefAudioHandler audioHandler : audioHandlers)
+            capture |= audioHandler.getAudioParameters(browser, params);
+        return capture;
+    }
+
+    @Override
+    public void onAudioStreamStarted(CefBrowser browser, CefAudioParameters params, int channels) {
+        MCEF.getAudio().onAudioStreamStarted(browser, params, channels);
+        for (CefAudioHandler audioHandler : audioHandlers)
+            audioHandler.onAudioStreamStarted(browser, params, channels);
+    }
+
+    @Override
+    public void onAudioStreamPacket(CefBrowser browser, FloatBuffer data, int frames, long pts) {
+        MCEF.getAudio().onAudioStreamPacket(browser, data, frames, pts);
+        for (CefAudioHandler audioHandler : audioHandlers) {
+            data.clear();
+            audioHandler.onAudioStreamPacket(browser, data, frames, pts);
+        }
+    }
+
+    @Override
+    public void onAudioStreamStopped(CefBrowser browser) {
+        MCEF.getAudio().onAudioStreamStopped(browser);
+        for (CefAudioHandler audioHandler : audioHandlers) audioHandler.onAudioStreamStopped(browser);
+    }
+
+    @Override
+    public void onAudioStreamError(CefBrowser browser, String text) {
+        MCEF.getLogger().warn("Audio stream error: " + text);
+        MCEF.getAudio().onAudioStreamStopped(browser);
+        for (CefAudioHandler audioHandler : audioHandlers) audioHandler.onAudioStreamError(browser, text);
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The parts of a browser that changed between two frames given to a {@link com.cinemamod.mcef.listeners.MCEFFrameListener},
+ * as a list of rectangles with their BGRA pixels. Applying the rectangles in order to a copy of the previous frame
+ * gives the new one, see {@link #applyTo(ByteBuffer, int)}.
+ * <p>
+ * Pixels are copied out of CEF's buffer once per paint, in a buffer shared by every subscriber of the browser.
+ * Frames are reference counted, the buffers go back to the browser's {@link MCEFFrameTap} once every frame
+ * using them has been released. Frames must not be used after they were released.
+ */
+public final class MCEFFrame {
+    private final int width, height;
+    private final long sequence;
+    private final long timestampNanos;
+    private final List<Part> parts;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private MCEFFrame(int width, int height, long sequence, long timestampNanos, List<Part> parts) {
+        this.width = width;
+        this.height = height;
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+        this.parts = parts;
+    }
+
+    /**
+     * @param block the pixels of the rectangles, one after the other, each as tightly packed rows
+     */
+    static MCEFFrame create(Block block, Rectangle[] rects, int width, int height, long sequence) {
+        List<Part> parts = new ArrayList<>(rects.length);
+        int offset = 0;
+        for (Rectangle rect : rects) {
+            parts.add(new Part(rect, block, offset));
+            offset += rect.width * rect.height * 4;
+        }
+        return new MCEFFrame(width, height, sequence, System.nanoTime(), parts);
+    }
+
+    /**
+     * Merges two consecutive frames into one, without copying pixels. Rectangles of the older frame that are
+     * entirely painted over by a single rectangle of the newer one are left out.
+     */
+    static MCEFFrame merge(MCEFFrame older, MCEFFrame newer) {
+        List<Part> parts = new ArrayList<>(older.parts.size() + newer.parts.size());
+        if (older.width == newer.width && older.height == newer.height) {
+            for (Part part : older.parts) {
+                boolean covered = false;
+                for (Part newerPart : newer.parts)
+                    covered |= newerPart.rect.contains(part.rect);
+                if (!covered) parts.add(part);
+            }
+        }
+        parts.addAll(newer.parts);
+        MCEFFrame merged = new MCEFFrame(newer.width, newer.height, newer.sequence, newer.timestampNanos, parts);
+        for (Block block : merged.blocks())
+            block.retain();
+        return merged;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of the browser paint this frame ends at, counting from 1; consecutive frames
+     * given to a listener can skip numbers when frames were merged
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the last paint in this frame was copied
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getRectCount() {
+        return parts.size();
+    }
+
+    public Rectangle getRect(int index) {
+        return new Rectangle(parts.get(index).rect);
+    }
+
+    /**
+     * @return a read-only view of the BGRA pixels of a rectangle, its rows tightly packed
+     */
+    public ByteBuffer getPixels(int index) {
+        Part part = parts.get(index);
+        ByteBuffer view = part.block.buffer.asReadOnlyBuffer();
+        view.limit(part.offset + part.rect.width * part.rect.height * 4).position(part.offset);
+        return view.slice();
+    }
+
+    /**
+     * @return whether the frame covers the whole browser, so it doesn't depend on previous frames
+     */
+    public boolean isComplete() {
+        for (Part part : parts)
+            if (part.rect.x <= 0 && part.rect.y <= 0 && part.rect.width >= width && part.rect.height >= height)
+                return true;
+        return false;
+    }
+
+    /**
+     * Copies the rectangles, in order, into a buffer holding the previous frame.
+     *
+     * @param dst       the buffer to copy to
+     * @param dstStride the width in pixels of a row in {@code dst}
+     */
+    public void applyTo(ByteBuffer dst, int dstStride) {
+        for (Part part : parts) {
+            Rectangle rect = part.rect;
+            ByteBuffer src = part.block.buffer.duplicate();
+            src.position(part.offset);
+            MCEFPixelCopy.copy(src.slice(), rect.width, 0, 0, dst, dstStride, rect.x, rect.y, rect.width, rect.height);
+        }
+    }
+
+    /**
+     * Keeps the frame alive until a matching {@link #release()}.
+     *
+     * @return the frame
+     */
+    public MCEFFrame retain() {
+        if (references.getAndIncrement() <= 0) throw new IllegalStateException("Frame was already released");
+        return this;
+    }
+
+    public void release() {
+        int left = references.decrementAndGet();
+        if (left < 0) throw new IllegalStateException("Frame was already released");
+        if (left == 0) {
+            for (Block block : blocks())
+                block.release();
+        }
+    }
+
+    private Set<Block> blocks() {
+        Set<Block> blocks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Part part : parts)
+            blocks.add(part.block);
+        return blocks;
+    }
+
+    private static final class Part {
+        private final Rectangle rect;
+        private final Block block;
+        private final int offset;
+
+        private Part(Rectangle rect, Block block, int offset) {
+            this.rect = rect;
+            this.block = block;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A buffer holding the pixels copied from a single paint, shared by the frames using them.
+     */
+    static final class Block {
+        private final MCEFFrameTap tap;
+        private final ByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Block(MCEFFrameTap tap, ByteBuffer buffer) {
+            this.tap = tap;
+            this.buffer = buffer;
+        }
+
+        ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        void retain() {
+            references.incrementAndGet();
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) tap.recycle(buffer);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.cinemamod.mcef.listeners.MCEFFrameListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A frame listener writing whole frames into a ring of slots in a memory-mapped file, for another local process
+ * to read. Best subscribed with {@link MCEFFrameSubscription.Mode#COALESCE}, closing the subscription doesn't close the file.
+ * <p>
+ * All values are little endian. The file starts with a {@value #HEADER_SIZE} byte header:
+ * <pre>
+ *  0  8 bytes  "MCEFRING"
+ *  8  int      version, 1
+ * 12  int      slot count
+ * 16  int      max width
+ * 20  int      max height
+ * 24  long     slot size in bytes, header included
+ * 32  long     sequence of the latest complete slot, 0 before the first frame
+ * 40  int      index of the latest complete slot
+ * </pre>
+ * followed by the slots, each made of a {@value #SLOT_HEADER_SIZE} byte header and the BGRA pixels with tightly packed rows:
+ * <pre>
+ *  0  long     sequence, odd while the slot is being written
+ *  8  int      width
+ * 12  int      height
+ * 16  long     {@link System#nanoTime()} of the frame
+ * </pre>
+ * Readers should read a slot's sequence before and after copying its pixels, and retry if it was odd or changed.
+ * Frames larger than the max size are skipped.
+ */
+public class MCEFFrameRingFile implements MCEFFrameListener, AutoCloseable {
+    public static final int HEADER_SIZE = 64;
+    public static final int SLOT_HEADER_SIZE = 32;
+    private static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final int slotCount;
+    private final int maxWidth, maxHeight;
+    private final long slotSize;
+    private long written = 0;
+    private int lastWidth = 0, lastHeight = 0;
+    private long skipped = 0;
+
+    /**
+     * Creates or overwrites the file, sized for the given amount of slots of the given size.
+     */
+    public MCEFFrameRingFile(Path path, int slotCount, int maxWidth, int maxHeight) throws IOException {
+        this.slotCount = slotCount;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.slotSize = SLOT_HEADER_SIZE + (long) maxWidth * maxHeight * 4;
+        long size = HEADER_SIZE + slotSize * slotCount;
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Ring file would be larger than 2GB");
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = "MCEFRING".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < magic.length; i++)
+            mapped.put(i, magic[i]);
+        mapped.putInt(8, VERSION);
+        mapped.putInt(12, slotCount);
+        mapped.putInt(16, maxWidth);
+        mapped.putInt(20, maxHeight);
+        mapped.putLong(24, slotSize);
+        mapped.putLong(32, 0);
+        mapped.putInt(40, 0);
+    }
+
+    /**
+     * @return the amount of frames written to the file
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the amount of frames skipped because they were larger than the slots
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public synchronized void onFrame(MCEFFrame frame) {
+        int width = frame.getWidth(), height = frame.getHeight();
+        boolean complete = frame.isComplete();
+        if (width > maxWidth || height > maxHeight || (!complete && (width != lastWidth || height != lastHeight))) {
+            skipped++;
+            return;
+        }
+
+        int slot = (int) (written % slotCount);
+        long sequence = written + 1;
+        int base = (int) (HEADER_SIZE + slot * slotSize);
+        mapped.putLong(base, sequence * 2 - 1);
+
+        ByteBuffer pixels = slice(base + SLOT_HEADER_SIZE, width * height * 4);
+        if (!complete) {
+            // Start from the previous frame, then apply what changed
+            int previous = (int) (HEADER_SIZE + ((written - 1) % slotCount) * slotSize);
+            pixels.put(slice(previous + SLOT_HEADER_SIZE, width * height * 4));
+        }
+        frame.applyTo(pixels, width);
+
+        mapped.putInt(base + 8, width);
+        mapped.putInt(base + 12, height);
+        mapped.putLong(base + 16, frame.getTimestampNanos());
+        mapped.putLong(base, sequence * 2);
+        mapped.putInt(40, slot);
+        mapped.putLong(32, sequence);
+
+        written = sequence;
+        lastWidth = width;
+        lastHeight = height;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mapped.force();
+        channel.close();
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = mapped.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.cinemamod.mcef.listeners.MCEFFrameListener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A listener receiving the frames of a browser, see {@link MCEFBrowser#subscribeFrames(MCEFFrameListener, Mode)}.
+ * <p>
+ * Frames are handed to the listener one at a time on a frame tap thread, never on the thread CEF paints from.
+ * While the listener is busy, at most one frame waits for it; what happens to frames arriving in the meantime
+ * depends on the {@link Mode}. Either way, the first frame a listener gets is {@link MCEFFrame#isComplete() complete},
+ * and every frame after that applies on top of the previous one.
+ */
+public final class MCEFFrameSubscription implements AutoCloseable {
+    public enum Mode {
+        /**
+         * Frames arriving while one is waiting are dropped. The listener then gets nothing until a complete
+         * frame, which the browser is asked to repaint once the listener is done with the waiting frame.
+         * A listener that keeps falling behind thus costs at most one full repaint per frame it handles.
+         * Best for consumers that only want the latest picture.
+         */
+        DROP,
+        /**
+         * Frames arriving while one is waiting are merged into it, without copying pixels.
+         * The listener gets every change, in fewer frames. Best for recordings and sinks.
+         */
+        COALESCE
+    }
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "MCEF-FrameTap-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MCEFFrameTap tap;
+    private final MCEFFrameListener listener;
+    private final Mode mode;
+    // Guarded by this
+    private MCEFFrame pending;
+    private boolean scheduled = false;
+    private boolean awaitingComplete = true;
+    /**
+     * Whether a frame was dropped and a complete one should be asked for once the listener is idle.
+     */
+    private boolean resyncDue = false;
+    private boolean closed = false;
+    private long delivered = 0, dropped = 0, coalesced = 0;
+
+    MCEFFrameSubscription(MCEFFrameTap tap, MCEFFrameListener listener, Mode mode) {
+        this.tap = tap;
+        this.listener = listener;
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the amount of frames given to the listener
+     */
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return the amount of paints the listener never saw, with {@link Mode#DROP}
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the amount of paints merged into a waiting frame, with {@link Mode#COALESCE}
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Called by the tap with every paint, from the thread CEF paints on. Never blocks on the listener.
+     */
+    synchronized void offer(MCEFFrame frame) {
+        if (closed) return;
+        if (awaitingComplete && !frame.isComplete()) {
+            dropped++;
+            return;
+        }
+        awaitingComplete = false;
+        resyncDue = false;
+
+        if (pending == null) {
+            pending = frame.retain();
+        } else if (frame.isComplete()) {
+            // Nothing waiting matters anymore
+            pending.release();
+            pending = frame.retain();
+            if (mode == Mode.DROP) dropped++;
+            else coalesced++;
+        } else if (mode == Mode.COALESCE) {
+            MCEFFrame merged = MCEFFrame.merge(pending, frame);
+            pending.release();
+            pending = merged;
+            coalesced++;
+        } else {
+            // Later frames would apply on top of the dropped one, wait for a complete frame instead.
+            // It's only asked for once the listener caught up, asking now would just get it dropped too
+            dropped++;
+            awaitingComplete = true;
+            resyncDue = true;
+        }
+
+        if (!scheduled) {
+            scheduled = true;
+            EXECUTOR.execute(this::drain);
+        }
+    }
+
+    /**
+     * Stops the frames, releasing any waiting one. Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (pending != null) {
+                pending.release();
+                pending = null;
+            }
+        }
+        tap.unsubscribe(this);
+    }
+
+    private void drain() {
+        while (true) {
+            MCEFFrame frame;
+            boolean resync = false;
+            synchronized (this) {
+                frame = pending;
+                pending = null;
+                if (frame == null) {
+                    scheduled = false;
+                    resync = resyncDue && !closed;
+                    resyncDue = false;
+                }
+            }
+            if (frame == null) {
+                if (resync) tap.requestCompleteFrame();
+                return;
+            }
+
+            try {
+                listener.onFrame(frame);
+            } catch (Throwable t) {
+                MCEF.getLogger().error("Frame listener failed", t);
+            } finally {
+                frame.release();
+            }
+            synchronized (this) {
+                delivered++;
+            }
+        }
+    }
+}
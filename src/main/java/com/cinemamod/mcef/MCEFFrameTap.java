@@ -0,0 +1,144 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.cinemamod.mcef.listeners.MCEFFrameListener;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies the dirty rectangles of a browser's paints once, for every {@link MCEFFrameSubscription} of that browser.
+ * Only does anything while the browser has subscribers. Paints may come from any thread.
+ */
+final class MCEFFrameTap {
+    /**
+     * The most released buffers kept for later paints, others are freed.
+     */
+    private static final int MAX_POOLED = 4;
+
+    private final MCEFBrowser browser;
+    private final List<MCEFFrameSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * Whether a repaint was asked for and no complete frame came since, so subscribers share one repaint.
+     */
+    private final AtomicBoolean repaintRequested = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    MCEFFrameTap(MCEFBrowser browser) {
+        this.browser = browser;
+    }
+
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    MCEFFrameSubscription subscribe(MCEFFrameListener listener, MCEFFrameSubscription.Mode mode) {
+        if (closed) throw new IllegalStateException("Browser was closed");
+        MCEFFrameSubscription subscription = new MCEFFrameSubscription(this, listener, mode);
+        subscriptions.add(subscription);
+        // New subscribers start with a whole frame
+        requestCompleteFrame();
+        return subscription;
+    }
+
+    void unsubscribe(MCEFFrameSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    void unsubscribeAll() {
+        for (MCEFFrameSubscription subscription : subscriptions)
+            subscription.close();
+    }
+
+    /**
+     * Asks CEF to repaint the whole browser, which gives a complete frame.
+     * Does nothing if a repaint was already asked for and hasn't arrived yet.
+     */
+    void requestCompleteFrame() {
+        if (repaintRequested.compareAndSet(false, true)) browser.repaint();
+    }
+
+    /**
+     * Copies the dirty rectangles of a paint and hands them to every subscriber.
+     */
+    void publish(ByteBuffer src, Rectangle[] dirtyRects, int width, int height) {
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        List<Rectangle> rects = new ArrayList<>(dirtyRects.length);
+        int bytes = 0;
+        for (Rectangle dirtyRect : dirtyRects) {
+            Rectangle rect = dirtyRect.intersection(bounds);
+            if (rect.isEmpty()) continue;
+            rects.add(rect);
+            bytes += rect.width * rect.height * 4;
+        }
+        if (rects.isEmpty()) return;
+
+        ByteBuffer buffer = take(bytes);
+        int offset = 0;
+        for (Rectangle rect : rects) {
+            MCEFPixelCopy.checkBounds(src, width, rect.x, rect.y, rect.width, rect.height);
+            MCEFPixelCopy.copy(MemoryUtil.memAddress0(src), width, rect.x, rect.y,
+                    MemoryUtil.memAddress0(buffer) + offset, rect.width, 0, 0, rect.width, rect.height);
+            offset += rect.width * rect.height * 4;
+        }
+
+        MCEFFrame frame = MCEFFrame.create(new MCEFFrame.Block(this, buffer), rects.toArray(new Rectangle[0]),
+                width, height, sequence.incrementAndGet());
+        if (frame.isComplete()) repaintRequested.set(false);
+        for (MCEFFrameSubscription subscription : subscriptions)
+            subscription.offer(frame);
+        frame.release();
+    }
+
+    void recycle(ByteBuffer buffer) {
+        if (closed || pool.size() >= MAX_POOLED) MCEFResourceTracker.free(buffer);
+        else pool.add(buffer);
+    }
+
+    /**
+     * Closes every subscription and frees the buffers, frames still in use free theirs once released.
+     */
+    void close() {
+        closed = true;
+        unsubscribeAll();
+        ByteBuffer buffer;
+        while ((buffer = pool.poll()) != null)
+            MCEFResourceTracker.free(buffer);
+    }
+
+    private ByteBuffer take(int bytes) {
+        ByteBuffer buffer = pool.poll();
+        if (buffer != null && buffer.capacity() >= bytes) return buffer;
+        if (buffer != null) MCEFResourceTracker.free(buffer);
+        return MCEFResourceTracker.allocate(bytes, false);
+    }
+}
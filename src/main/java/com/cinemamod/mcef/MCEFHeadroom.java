@@ -0,0 +1,71 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+/**
+ * How much larger than needed browser textures and buffers are allocated, so that growing a little
+ * doesn't reallocate them. Smaller sizes reuse the existing storage, until it is more than four times
+ * larger than needed. See {@link MCEFSettings#setStorageHeadroom(MCEFHeadroom)}.
+ */
+public enum MCEFHeadroom {
+    /**
+     * Storage is always exactly the size needed, reallocated on every resize.
+     */
+    NONE,
+    /**
+     * Storage grows in steps of 25%.
+     */
+    QUARTER,
+    /**
+     * Storage grows to the next power of two.
+     */
+    POWER_OF_TWO;
+
+    /**
+     * @param size the size needed, a width, height or amount of bytes
+     * @param max  the largest size allowed
+     * @return the size to allocate
+     */
+    public int grow(int size, int max) {
+        long grown;
+        switch (this) {
+            case QUARTER:
+                grown = size + (size + 3) / 4;
+                break;
+            case POWER_OF_TWO:
+                grown = size <= 1 ? 1 : Long.highestOneBit(size - 1) << 1;
+                break;
+            default:
+                grown = size;
+        }
+        return (int) Math.max(size, Math.min(grown, max));
+    }
+
+    /**
+     * @param needed    the size needed, an area or amount of bytes
+     * @param allocated the size currently allocated
+     * @return whether the current storage can be kept
+     */
+    public boolean fits(long needed, long allocated) {
+        if (this == NONE) return needed == allocated;
+        return needed <= allocated && allocated <= needed * 4;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of latencies, bucketed by powers of two milliseconds.
+ * <p>
+ * Bucket 0 holds latencies under 1ms, bucket n latencies from 2^(n-1) up to 2^n ms, and the last bucket
+ * anything above. Meant to be recorded from a single thread and read from any.
+ */
+public class MCEFLatencyHistogram {
+    public static final int BUCKET_COUNT = 17;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private volatile long count = 0;
+    private volatile long totalNanos = 0;
+    private volatile long maxNanos = 0;
+
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, nanos));
+        int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+        buckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        long count = this.count;
+        return count == 0 ? 0 : totalNanos / 1_000_000D / count;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1_000_000D;
+    }
+
+    /**
+     * @param percentile the percentile to get, from 0 to 1
+     * @return the upper bound in milliseconds of the bucket holding the given percentile, or 0 if nothing was recorded
+     */
+    public long getPercentileMillis(double percentile) {
+        long[] buckets = getBuckets();
+        long total = 0;
+        for (long bucket : buckets)
+            total += bucket;
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return 1L << i;
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return a copy of the bucket counts
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            buckets[i] = 0;
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps at most {@link MCEFSettings#getMaxLiveBrowsers()} browsers alive by hibernating the least recently
+ * used ones, see {@link MCEFBrowser#hibernate()}. A browser is used when its texture is sampled or input is
+ * sent to it, which also brings it back from hibernation.
+ * <p>
+ * Browsers used within the last {@link #RECENT_FRAMES} frames are never hibernated, so the limit is exceeded
+ * rather than hibernating browsers that are being looked at. Idle browsers in the {@link MCEFBrowserPool} and
+ * browsers that opted out through {@link MCEFBrowser#useHibernation(boolean)} are never hibernated either;
+ * only the latter count towards the limit.
+ */
+public final class MCEFLifecycleManager {
+    public static final int RECENT_FRAMES = 2;
+
+    private long hibernations = 0;
+
+    MCEFLifecycleManager() {
+    }
+
+    /**
+     * @return the amount of times a browser was hibernated by the manager
+     */
+    public long getHibernations() {
+        return hibernations;
+    }
+
+    /**
+     * @return the amount of browsers that are neither hibernated nor idle in the browser pool
+     */
+    public int getLiveCount() {
+        int live = 0;
+        for (MCEFBrowser browser : MCEF.getBrowsers())
+            if (!browser.isHibernated() && !browser.pooled) live++;
+        return live;
+    }
+
+    public int getHibernatedCount() {
+        int hibernated = 0;
+        for (MCEFBrowser browser : MCEF.getBrowsers())
+            if (browser.isHibernated()) hibernated++;
+        return hibernated;
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()}, hibernates browsers while there are too many alive.
+     */
+    void onRender(long frame) {
+        int maxLive = MCEF.getSettings().getMaxLiveBrowsers();
+        if (maxLive <= 0) return;
+
+        int live = 0;
+        List<MCEFBrowser> candidates = new ArrayList<>();
+        for (MCEFBrowser browser : MCEF.getBrowsers()) {
+            if (browser.isHibernated() || browser.pooled) continue;
+            live++;
+            if (browser.usingHibernation()) candidates.add(browser);
+        }
+        if (live <= maxLive) return;
+
+        candidates.sort(Comparator.comparingLong(MCEFBrowser::getLastUsedFrame));
+        for (MCEFBrowser browser : candidates) {
+            if (live <= maxLive || frame - browser.getLastUsedFrame() <= RECENT_FRAMES) break;
+            if (browser.hibernate()) {
+                hibernations++;
+                live--;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the memory used by all browsers, off-heap and estimated GPU bytes as accounted by {@link MCEFResourceTracker},
+ * within {@link MCEFSettings#getMemoryBudgetMegabytes()}.
+ * <p>
+ * Every {@link #CHECK_INTERVAL} frames, if over budget, the least recently used browser that can still be downscaled
+ * gets its {@link MCEFBrowser#getRenderScaleLimit() render scale limit} halved, down to
+ * {@link MCEFSettings#getMinRenderScale()}. Once every browser is at the lowest scale, the least recently used one is
+ * hibernated instead, like {@link MCEFLifecycleManager} does. Browsers used within the last
+ * {@link MCEFLifecycleManager#RECENT_FRAMES} frames are downscaled but never hibernated. Only one browser is acted
+ * on per check, giving it time to repaint at its new size, which also lets go of storage sized for the old one.
+ * <p>
+ * Once usage has stayed below {@link #RESTORE_FRACTION} of the budget for {@link #RESTORE_CHECKS} checks in a row,
+ * limits are raised again, most recently used browser first, one browser per check. A limit is only raised if the
+ * browser's memory at the doubled scale, about four times what it uses now, still keeps usage below
+ * {@link #RESTORE_FRACTION}, so raising it doesn't push usage straight back over the budget.
+ */
+public final class MCEFMemoryBudget {
+    public static final int CHECK_INTERVAL = 30;
+    public static final double RESTORE_FRACTION = 0.75;
+    public static final int RESTORE_CHECKS = 4;
+
+    private long downscales = 0;
+    private long hibernations = 0;
+    private int quietChecks = 0;
+
+    MCEFMemoryBudget() {
+    }
+
+    /**
+     * @return the budget in bytes, 0 if there is none
+     */
+    public long getBudgetBytes() {
+        return Math.max(0, MCEF.getSettings().getMemoryBudgetMegabytes()) * 1024L * 1024L;
+    }
+
+    /**
+     * @return the off-heap and estimated GPU memory used by all browsers, in bytes
+     */
+    public long getUsedBytes() {
+        return MCEFResourceTracker.getTotalBytes();
+    }
+
+    public boolean isOverBudget() {
+        long budget = getBudgetBytes();
+        return budget > 0 && getUsedBytes() > budget;
+    }
+
+    /**
+     * @return the amount of times a browser's render scale limit was lowered to save memory
+     */
+    public long getDownscales() {
+        return downscales;
+    }
+
+    /**
+     * @return the amount of times a browser was hibernated to save memory
+     */
+    public long getHibernations() {
+        return hibernations;
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()}, acts on at most one browser every {@link #CHECK_INTERVAL} frames.
+     */
+    void onRender(long frame) {
+        if (frame % CHECK_INTERVAL != 0) return;
+
+        List<MCEFBrowser> browsers = new ArrayList<>();
+        for (MCEFBrowser browser : MCEF.getBrowsers())
+            if (!browser.isHibernated() && !browser.pooled) browsers.add(browser);
+        browsers.sort(Comparator.comparingLong(MCEFBrowser::getLastUsedFrame));
+
+        long budget = getBudgetBytes();
+        long used = getUsedBytes();
+        if (budget > 0 && used > budget) {
+            quietChecks = 0;
+            reduce(browsers, frame);
+        } else if (budget <= 0 || used < budget * RESTORE_FRACTION) {
+            if (budget > 0 && ++quietChecks < RESTORE_CHECKS) return;
+            restore(browsers, budget, used);
+        } else {
+            quietChecks = 0;
+        }
+    }
+
+    private void restore(List<MCEFBrowser> browsers, long budget, long used) {
+        // Most recently used first
+        for (int i = browsers.size() - 1; i >= 0; i--) {
+            MCEFBrowser browser = browsers.get(i);
+            if (browser.getRenderScaleLimit() >= 1) continue;
+            // Doubling the scale quadruples the pixels
+            long growth = 3 * (browser.getGpuBytes() + browser.getOffHeapBytes());
+            if (budget > 0 && used + growth >= budget * RESTORE_FRACTION) continue;
+            browser.setRenderScaleLimit(browser.getRenderScaleLimit() * 2);
+            quietChecks = 0;
+            return;
+        }
+    }
+
+    private void reduce(List<MCEFBrowser> browsers, long frame) {
+        double minScale = Math.max(MCEFBrowser.MIN_RENDER_SCALE, MCEF.getSettings().getMinRenderScale());
+        for (MCEFBrowser browser : browsers) {
+            double limit = Math.min(browser.getRenderScale(), browser.getRenderScaleLimit());
+            if (limit > minScale) {
+                browser.setRenderScaleLimit(Math.max(minScale, limit / 2));
+                downscales++;
+                return;
+            }
+        }
+
+        for (MCEFBrowser browser : browsers) {
+            if (frame - browser.getLastUsedFrame() <= MCEFLifecycleManager.RECENT_FRAMES) break;
+            if (browser.usingHibernation() && browser.hibernate()) {
+                hibernations++;
+                return;
+            }
+        }
+    }
+}
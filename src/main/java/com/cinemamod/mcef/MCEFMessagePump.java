@@ -0,0 +1,232 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Drives CEF's message loop, either from the render thread once per frame or from a dedicated thread.
+ * <p>
+ * CEF's browser process work has to happen on the thread that initialized CEF. With a dedicated thread,
+ * CEF is initialized, pumped and shut down on the "MCEF-MessagePump" thread, which sleeps until CEF
+ * schedules work through {@code CefAppHandler.onScheduleMessagePumpWork}.
+ * <p>
+ * Either way, the message loop only runs once the delay CEF last asked for has passed, or after
+ * 1/30th of a second without CEF asking. Work scheduled with no delay is run right away, repeatedly
+ * if CEF keeps asking, until the time budget set by {@link MCEFSettings#setPumpBudgetMillis(int)} is used up.
+ * <p>
+ * Threading contract with a dedicated thread: every CEF callback, including the {@link org.cef.handler.CefRenderHandler}
+ * methods of {@link MCEFBrowser} and the handlers registered on {@link MCEFClient}, runs on the pump thread.
+ * {@link MCEFBrowser} copies the pixels it is given in {@code onPaint} and hands the copy, along with any popup and
+ * cursor changes, to the render thread through {@link #runOnRenderThread(Runnable)}. Tasks handed over this way run
+ * in order at the start of the next frame. Mods overriding the render handler methods must do the same before
+ * touching GL or GLFW. Calls into CEF, like loading a URL or sending input, can still be made from the render thread.
+ * <p>
+ * The dedicated thread isn't available on macOS, where CEF always runs on the main thread.
+ */
+public final class MCEFMessagePump {
+    /**
+     * The longest CEF is left without a message loop iteration, even if no work was scheduled.
+     */
+    private static final long MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1000 / 30);
+
+    private final boolean dedicatedThread;
+    private final Queue<Runnable> renderTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> pumpTasks = new ConcurrentLinkedQueue<>();
+    /**
+     * The {@link System#nanoTime()} at which CEF wants its next message loop iteration.
+     */
+    private final AtomicLong deadline = new AtomicLong(System.nanoTime());
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    // Only written by the thread CEF is driven from
+    private volatile long executedPumps = 0;
+    private volatile long skippedPumps = 0;
+    private volatile long pumpNanos = 0;
+    private volatile long lastPumpNanos = 0;
+
+    MCEFMessagePump(boolean dedicatedThread) {
+        this.dedicatedThread = dedicatedThread && !MCEFPlatform.getPlatform().isMacOS();
+    }
+
+    /**
+     * @return whether CEF is driven from a dedicated thread instead of the render thread
+     */
+    public boolean isDedicatedThread() {
+        return dedicatedThread;
+    }
+
+    /**
+     * @return the amount of message loop iterations run
+     */
+    public long getExecutedPumps() {
+        return executedPumps;
+    }
+
+    /**
+     * @return the amount of frames on which the message loop wasn't run because no work was due,
+     * always 0 with a dedicated thread which sleeps instead
+     */
+    public long getSkippedPumps() {
+        return skippedPumps;
+    }
+
+    /**
+     * @return the total time spent running the message loop, in nanoseconds
+     */
+    public long getPumpNanos() {
+        return pumpNanos;
+    }
+
+    /**
+     * @return the time spent running the message loop the last time work was due, in nanoseconds
+     */
+    public long getLastPumpNanos() {
+        return lastPumpNanos;
+    }
+
+    /**
+     * Runs a task on the render thread; immediately if already on it, at the start of the next frame if not.
+     */
+    public void runOnRenderThread(Runnable task) {
+        if (RenderSystem.isOnRenderThread()) task.run();
+        else renderTasks.add(task);
+    }
+
+    /**
+     * Called with the delays passed to {@code CefAppHandler.onScheduleMessagePumpWork}, from any thread.
+     *
+     * @param delayMs how long until CEF wants the message loop to be pumped, in milliseconds
+     */
+    void scheduleWork(long delayMs) {
+        long delay = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)), MAX_DELAY_NANOS);
+        deadline.set(System.nanoTime() + delay);
+        Thread pumpThread = thread;
+        if (pumpThread != null) LockSupport.unpark(pumpThread);
+    }
+
+    /**
+     * Runs a task on the thread CEF is driven from and waits for its result.
+     * This is how CEF gets initialized on the dedicated thread, which is started on the first call.
+     */
+    <T> T runOnPumpThread(Supplier<T> task) {
+        if (!dedicatedThread || Thread.currentThread() == thread) return task.get();
+
+        startThread();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pumpTasks.add(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        LockSupport.unpark(thread);
+        return future.join();
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()} at the start of every frame.
+     */
+    void onRender() {
+        if (!dedicatedThread) {
+            if (isDue(System.nanoTime())) pump();
+            else skippedPumps++;
+        }
+
+        Runnable task;
+        while ((task = renderTasks.poll()) != null)
+            task.run();
+    }
+
+    /**
+     * Stops the dedicated thread once it has run any remaining tasks. Does nothing without one.
+     */
+    void stop() {
+        running = false;
+        Thread pumpThread = thread;
+        if (pumpThread != null) LockSupport.unpark(pumpThread);
+    }
+
+    private synchronized void startThread() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this::run, "MCEF-MessagePump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (running || !pumpTasks.isEmpty()) {
+            Runnable task;
+            while ((task = pumpTasks.poll()) != null)
+                task.run();
+
+            long wait = deadline.get() - System.nanoTime();
+            if (wait > 0) {
+                // Unparked early when work is scheduled or a task is added, check again either way
+                LockSupport.parkNanos(this, wait);
+            } else if (MCEF.isInitialized()) {
+                pump();
+            } else {
+                deadline.set(System.nanoTime() + MAX_DELAY_NANOS);
+            }
+        }
+        thread = null;
+    }
+
+    private boolean isDue(long now) {
+        return now - deadline.get() >= 0;
+    }
+
+    /**
+     * Runs message loop iterations for as long as CEF has work due, within the pump budget.
+     * The first iteration always runs, a single iteration can't be cut short.
+     */
+    private void pump() {
+        long budget = TimeUnit.MILLISECONDS.toNanos(MCEF.getSettings().getPumpBudgetMillis());
+        long start = System.nanoTime();
+        long now = start;
+        int iterations = 0;
+        do {
+            // Until CEF schedules more work, fall back to the maximum delay. Work scheduled from another
+            // thread in the meantime wins over the fallback and is picked up by this iteration anyway
+            long due = deadline.get();
+            deadline.compareAndSet(due, now + MAX_DELAY_NANOS);
+            MCEF.getApp().getHandle().N_DoMessageLoopWork();
+            iterations++;
+            now = System.nanoTime();
+        } while (isDue(now) && now - start < budget);
+
+        executedPumps += iterations;
+        lastPumpNanos = now - start;
+        pumpNanos += lastPumpNanos;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import org.lwjgl.openal.ALC10;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.openal.AL11.*;
+
+/**
+ * Plays a stream through a streaming OpenAL source on the game's OpenAL context.
+ * <p>
+ * Mono streams are played as they are, which lets the source be positioned in the world through {@link #getSource()}.
+ * Anything with more channels is played in stereo from its first two channels, which the common layouts put at
+ * front left and right.
+ * <p>
+ * The source and buffers belong to the context that was current when the sink was opened. Once the game recreates its
+ * context, as it does when the sound engine reloads, every call throws and {@link MCEFAudioStream} opens a new sink.
+ */
+public class MCEFOpenALSink implements MCEFAudioSink {
+    private static final int MAX_BUFFERS = 16;
+
+    private final int[] buffers = new int[MAX_BUFFERS];
+    private final int[] bufferFrames = new int[MAX_BUFFERS];
+    private int bufferCount = 0;
+    private int freeBuffers = 0;
+    private int queuedFrames = 0;
+    private int source = 0;
+    private long context = 0;
+    private int sampleRate;
+    private int channels;
+    private int format;
+    private ShortBuffer pcm;
+
+    /**
+     * @return the OpenAL source playing the stream, 0 until opened
+     */
+    public int getSource() {
+        return source;
+    }
+
+    @Override
+    public void open(int sampleRate, int channels) {
+        context = ALC10.alcGetCurrentContext();
+        if (context == 0)
+            throw new IllegalStateException("No OpenAL context is current");
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        format = channels == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16;
+        source = alGenSources();
+        // Played at the listener until a mod positions the source
+        alSourcei(source, AL_SOURCE_RELATIVE, AL_TRUE);
+        alSource3f(source, AL_POSITION, 0, 0, 0);
+        checkError("open");
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        checkContext();
+        reclaimBuffers();
+        if (queuedFrames == 0) return 0;
+        return Math.max(0, queuedFrames - alGetSourcei(source, AL_SAMPLE_OFFSET));
+    }
+
+    /**
+     * Any amount of frames fits in a buffer, so this is unlimited until all {@link #MAX_BUFFERS} are queued.
+     */
+    @Override
+    public int getWritableFrames() {
+        checkContext();
+        reclaimBuffers();
+        return freeBuffers > 0 || bufferCount < MAX_BUFFERS ? Integer.MAX_VALUE : 0;
+    }
+
+    @Override
+    public int write(float[] samples, int frames) {
+        checkContext();
+        reclaimBuffers();
+        int buffer;
+        if (freeBuffers > 0) {
+            buffer = buffers[--freeBuffers];
+        } else if (bufferCount < MAX_BUFFERS) {
+            buffer = alGenBuffers();
+            buffers[bufferCount++] = buffer;
+        } else {
+            return 0;
+        }
+
+        int outChannels = format == AL_FORMAT_MONO16 ? 1 : 2;
+        if (pcm == null || pcm.capacity() < frames * outChannels) {
+            if (pcm != null) MemoryUtil.memFree(pcm);
+            pcm = MemoryUtil.memAllocShort(frames * outChannels);
+        }
+        pcm.clear();
+        for (int frame = 0; frame < frames; frame++) {
+            int i = frame * channels;
+            pcm.put(toShort(samples[i]));
+            if (outChannels == 2) pcm.put(toShort(samples[channels == 1 ? i : i + 1]));
+        }
+        pcm.flip();
+
+        alBufferData(buffer, format, pcm, sampleRate);
+        alSourceQueueBuffers(source, buffer);
+        setFrames(buffer, frames);
+        queuedFrames += frames;
+        // Also restarts the source after it ran dry
+        if (alGetSourcei(source, AL_SOURCE_STATE) != AL_PLAYING) alSourcePlay(source);
+        checkError("write");
+        return frames;
+    }
+
+    @Override
+    public void close() {
+        // The names of a destroyed context are gone with it, deleting them could hit objects of the new one
+        boolean owned = context != 0 && ALC10.alcGetCurrentContext() == context;
+        if (owned) {
+            if (source != 0) {
+                alSourceStop(source);
+                alDeleteSources(source);
+            }
+            for (int i = 0; i < bufferCount; i++)
+                alDeleteBuffers(buffers[i]);
+        }
+        source = 0;
+        context = 0;
+        bufferCount = 0;
+        freeBuffers = 0;
+        queuedFrames = 0;
+        if (pcm != null) {
+            MemoryUtil.memFree(pcm);
+            pcm = null;
+        }
+    }
+
+    private void checkContext() {
+        if (ALC10.alcGetCurrentContext() != context)
+            throw new IllegalStateException("The OpenAL context the sink was opened on is gone");
+    }
+
+    private static void checkError(String action) {
+        int error = alGetError();
+        if (error != AL_NO_ERROR)
+            throw new IllegalStateException("OpenAL error 0x" + Integer.toHexString(error) + " on " + action);
+    }
+
+    /**
+     * Unqueues played buffers and moves them to the front of {@link #buffers}, where free ones are kept.
+     */
+    private void reclaimBuffers() {
+        int processed = alGetSourcei(source, AL_BUFFERS_PROCESSED);
+        while (processed-- > 0) {
+            int buffer = alSourceUnqueueBuffers(source);
+            queuedFrames -= getFrames(buffer);
+            for (int i = freeBuffers; i < bufferCount; i++) {
+                if (buffers[i] == buffer) {
+                    buffers[i] = buffers[freeBuffers];
+                    int frames = bufferFrames[i];
+                    bufferFrames[i] = bufferFrames[freeBuffers];
+                    buffers[freeBuffers] = buffer;
+                    bufferFrames[freeBuffers] = frames;
+                    freeBuffers++;
+                    break;
+                }
+            }
+        }
+    }
+
+    private int getFrames(int buffer) {
+        for (int i = 0; i < bufferCount; i++)
+            if (buffers[i] == buffer) return bufferFrames[i];
+        return 0;
+    }
+
+    private void setFrames(int buffer, int frames) {
+        for (int i = 0; i < bufferCount; i++)
+            if (buffers[i] == buffer) bufferFrames[i] = frames;
+    }
+
+    private static short toShort(float sample) {
+        return (short) (Math.max(-1, Math.min(1, sample)) * Short.MAX_VALUE);
+    }
+}
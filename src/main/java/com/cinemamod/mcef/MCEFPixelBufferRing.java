@@ -0,0 +1,192 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL44.*;
+
+/**
+ * A ring of persistently mapped pixel-unpack buffers used to hand texture uploads to the GPU asynchronously.
+ * <p>
+ * Pixels are copied into the current slot and {@code glTexSubImage2D} is issued with an offset into the
+ * bound buffer, so the call returns without waiting on the driver to copy from client memory. Each slot is
+ * protected by a fence once it has been submitted, and is only written to again after that fence has signaled.
+ * <p>
+ * Must only be used from the render thread.
+ */
+final class MCEFPixelBufferRing {
+    private static final int SLOT_COUNT = 3;
+
+    private final long[] fences = new long[SLOT_COUNT];
+    private int bufferID = 0;
+    private ByteBuffer mapped;
+    private long mappedAddress;
+    private int slotSize = 0;
+    private int slot = 0;
+    private int slotOffset = 0;
+    private long stallNanos = 0;
+
+    /**
+     * @return whether the current context supports persistently mapped buffers and fences
+     */
+    static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return (caps.OpenGL44 || caps.GL_ARB_buffer_storage) && (caps.OpenGL32 || caps.GL_ARB_sync);
+    }
+
+    /**
+     * Makes sure every slot can hold at least the given amount of bytes, reallocating the ring if it can't.
+     *
+     * @param shrink whether to also reallocate the ring if its slots are larger than needed
+     * @return false if the ring could not be allocated, in which case the caller should upload directly
+     */
+    boolean ensureCapacity(int bytes, boolean shrink) {
+        if (bytes <= slotSize && !(shrink && bytes < slotSize) && bufferID != 0) return true;
+        delete();
+
+        bufferID = glGenBuffers();
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, bufferID);
+        int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+        glBufferStorage(GL_PIXEL_UNPACK_BUFFER, (long) bytes * SLOT_COUNT, flags);
+        mapped = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, (long) bytes * SLOT_COUNT, flags);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+
+        if (mapped == null) {
+            MCEF.getLogger().warn("Could not map pixel unpack buffer, falling back to synchronous uploads");
+            delete();
+            return false;
+        }
+
+        mappedAddress = MemoryUtil.memAddress(mapped);
+        slotSize = bytes;
+        slot = 0;
+        slotOffset = 0;
+        return true;
+    }
+
+    /**
+     * @return whether a single upload of the given amount of bytes fits in a slot
+     */
+    boolean fits(int bytes) {
+        return bytes <= slotSize;
+    }
+
+    /**
+     * Copies a rectangle of BGRA pixels into the ring and uploads it to the currently bound texture.
+     *
+     * @param src       the pixels to upload
+     * @param srcStride the width in pixels of a row in {@code src}
+     * @param srcX      the x position of the rectangle in {@code src}
+     * @param srcY      the y position of the rectangle in {@code src}
+     * @param dstX      the x position to upload to in the texture
+     * @param dstY      the y position to upload to in the texture
+     * @param width     the width of the rectangle
+     * @param height    the height of the rectangle
+     */
+    void upload(ByteBuffer src, int srcStride, int srcX, int srcY, int dstX, int dstY, int width, int height) {
+        int bytes = width * height * 4;
+        if (bytes > slotSize) throw new IndexOutOfBoundsException(bytes + " bytes don't fit in a slot of " + slotSize);
+        MCEFPixelCopy.checkBounds(src, srcStride, srcX, srcY, width, height);
+        if (slotOffset + bytes > slotSize) nextSlot();
+        if (slotOffset == 0) awaitSlot();
+
+        long dstOffset = (long) slot * slotSize + slotOffset;
+        MCEFPixelCopy.copy(MemoryUtil.memAddress0(src), srcStride, srcX, srcY,
+                mappedAddress + dstOffset, width, 0, 0, width, height);
+
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, bufferID);
+        RenderSystem.pixelStore(GL_UNPACK_ROW_LENGTH, 0);
+        RenderSystem.pixelStore(GL_UNPACK_SKIP_PIXELS, 0);
+        RenderSystem.pixelStore(GL_UNPACK_SKIP_ROWS, 0);
+        glTexSubImage2D(GL_TEXTURE_2D, 0, dstX, dstY, width, height, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, dstOffset);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+
+        slotOffset += bytes;
+    }
+
+    /**
+     * Fences the current slot if anything was written to it and moves on to the next one.
+     * Should be called once all uploads for a paint have been issued.
+     */
+    void submit() {
+        if (slotOffset > 0) nextSlot();
+    }
+
+    /**
+     * @return the size of the ring's buffer, in bytes
+     */
+    long getBytes() {
+        return (long) slotSize * SLOT_COUNT;
+    }
+
+    /**
+     * @return the time spent waiting on fences since the last call, in nanoseconds
+     */
+    long takeStallNanos() {
+        long stall = stallNanos;
+        stallNanos = 0;
+        return stall;
+    }
+
+    void delete() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (fences[i] != 0) {
+                glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        if (bufferID != 0) {
+            // Deleting a mapped buffer implicitly unmaps it
+            glDeleteBuffers(bufferID);
+            bufferID = 0;
+        }
+        mapped = null;
+        mappedAddress = 0;
+        slotSize = 0;
+    }
+
+    private void nextSlot() {
+        fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slot = (slot + 1) % SLOT_COUNT;
+        slotOffset = 0;
+    }
+
+    private void awaitSlot() {
+        long fence = fences[slot];
+        if (fence == 0) return;
+
+        long start = System.nanoTime();
+        int result = glClientWaitSync(fence, 0, 0);
+        // Only flush on the second attempt, most of the time the fence has long signaled
+        while (result == GL_TIMEOUT_EXPIRED)
+            result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L);
+        stallNanos += System.nanoTime() - start;
+
+        glDeleteSync(fence);
+        fences[slot] = 0;
+    }
+}
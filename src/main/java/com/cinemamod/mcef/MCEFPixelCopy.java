@@ -0,0 +1,193 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copies rectangles of 4 byte pixels between buffers.
+ * <p>
+ * None of the methods here change the position or limit of the buffers they are given.
+ * Rectangles whose rows are contiguous in both buffers are copied in a single call, others row by row.
+ * Copies of at least {@link #PARALLEL_THRESHOLD} bytes between direct buffers are split across the
+ * common fork/join pool.
+ */
+public final class MCEFPixelCopy {
+    /**
+     * The size in bytes from which a copy is split across threads. A 1080p frame is about 8MB.
+     */
+    public static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+    /**
+     * The smallest amount of bytes a single fork/join task copies.
+     */
+    private static final int MIN_TASK_BYTES = 512 * 1024;
+
+    private MCEFPixelCopy() {
+    }
+
+    /**
+     * Copies a rectangle between two buffers of the same width, as used by the repaint logic.
+     *
+     * @param src   the buffer to copy from
+     * @param dst   the buffer to copy to
+     * @param rect  the rectangle to copy
+     * @param width the width in pixels of both buffers
+     */
+    public static void copy(ByteBuffer src, ByteBuffer dst, Rectangle rect, int width) {
+        copy(src, width, rect.x, rect.y, dst, width, rect.x, rect.y, rect.width, rect.height);
+    }
+
+    /**
+     * Copies a rectangle of pixels from one buffer to another.
+     *
+     * @param src       the buffer to copy from
+     * @param srcStride the width in pixels of a row in {@code src}
+     * @param srcX      the x position of the rectangle in {@code src}
+     * @param srcY      the y position of the rectangle in {@code src}
+     * @param dst       the buffer to copy to
+     * @param dstStride the width in pixels of a row in {@code dst}
+     * @param dstX      the x position to copy to in {@code dst}
+     * @param dstY      the y position to copy to in {@code dst}
+     * @param width     the width of the rectangle
+     * @param height    the height of the rectangle
+     * @throws IndexOutOfBoundsException if the rectangle is not within either buffer
+     */
+    public static void copy(ByteBuffer src, int srcStride, int srcX, int srcY,
+                            ByteBuffer dst, int dstStride, int dstX, int dstY, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        // Direct buffers are copied through their address, nothing else would stop a copy outside of them
+        checkBounds(src, srcStride, srcX, srcY, width, height);
+        checkBounds(dst, dstStride, dstX, dstY, width, height);
+        if (src.isDirect() && dst.isDirect()) {
+            copy(MemoryUtil.memAddress0(src), srcStride, srcX, srcY,
+                    MemoryUtil.memAddress0(dst), dstStride, dstX, dstY, width, height);
+            return;
+        }
+
+        // Heap buffers, go through views so the caller's position and limit stay untouched
+        ByteBuffer srcView = src.duplicate();
+        ByteBuffer dstView = dst.duplicate();
+        if (isContiguous(srcStride, srcX, dstStride, dstX, width)) {
+            int srcOffset = srcY * srcStride * 4;
+            srcView.limit(srcOffset + width * height * 4).position(srcOffset);
+            dstView.position(dstY * dstStride * 4);
+            dstView.put(srcView);
+            return;
+        }
+        int rowBytes = width * 4;
+        for (int row = 0; row < height; row++) {
+            int srcOffset = ((srcY + row) * srcStride + srcX) * 4;
+            srcView.limit(srcOffset + rowBytes).position(srcOffset);
+            dstView.position(((dstY + row) * dstStride + dstX) * 4);
+            dstView.put(srcView);
+        }
+    }
+
+    /**
+     * Checks that a rectangle of pixels lies within a buffer, from its first byte up to its capacity.
+     *
+     * @throws IndexOutOfBoundsException if it doesn't
+     */
+    static void checkBounds(ByteBuffer buffer, int stride, int x, int y, int width, int height) {
+        long end = ((long) (y + height - 1) * stride + x + width) * 4;
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > stride || end > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("Rectangle " + width + "x" + height + " at " + x + "," + y
+                    + " with a stride of " + stride + " pixels is outside a buffer of " + buffer.capacity() + " bytes");
+        }
+    }
+
+    /**
+     * Copies a rectangle of pixels between two native memory addresses.
+     * Same as {@link #copy(ByteBuffer, int, int, int, ByteBuffer, int, int, int, int, int)},
+     * with the buffers replaced by the address of their first pixel. Nothing is bounds checked here.
+     */
+    public static void copy(long src, int srcStride, int srcX, int srcY,
+                            long dst, int dstStride, int dstX, int dstY, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        long bytes = (long) width * height * 4;
+        if (bytes >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(new CopyTask(src, srcStride, srcX, srcY, dst, dstStride, dstX, dstY, width, height));
+        } else {
+            copyRows(src, srcStride, srcX, srcY, dst, dstStride, dstX, dstY, width, height);
+        }
+    }
+
+    private static boolean isContiguous(int srcStride, int srcX, int dstStride, int dstX, int width) {
+        return srcX == 0 && dstX == 0 && width == srcStride && width == dstStride;
+    }
+
+    private static void copyRows(long src, int srcStride, int srcX, int srcY,
+                                 long dst, int dstStride, int dstX, int dstY, int width, int height) {
+        if (isContiguous(srcStride, srcX, dstStride, dstX, width)) {
+            MemoryUtil.memCopy(src + (long) srcY * srcStride * 4, dst + (long) dstY * dstStride * 4, (long) width * height * 4);
+            return;
+        }
+        long rowBytes = width * 4L;
+        long srcRow = src + ((long) srcY * srcStride + srcX) * 4;
+        long dstRow = dst + ((long) dstY * dstStride + dstX) * 4;
+        for (int row = 0; row < height; row++) {
+            MemoryUtil.memCopy(srcRow, dstRow, rowBytes);
+            srcRow += srcStride * 4L;
+            dstRow += dstStride * 4L;
+        }
+    }
+
+    /**
+     * Splits a copy in two bands of rows until the bands are small enough.
+     */
+    private static final class CopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long src, dst;
+        private final int srcStride, srcX, srcY, dstStride, dstX, dstY, width, height;
+
+        CopyTask(long src, int srcStride, int srcX, int srcY, long dst, int dstStride, int dstX, int dstY, int width, int height) {
+            this.src = src;
+            this.srcStride = srcStride;
+            this.srcX = srcX;
+            this.srcY = srcY;
+            this.dst = dst;
+            this.dstStride = dstStride;
+            this.dstX = dstX;
+            this.dstY = dstY;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) width * height * 4 <= MIN_TASK_BYTES * 2L || height < 2) {
+                copyRows(src, srcStride, srcX, srcY, dst, dstStride, dstX, dstY, width, height);
+                return;
+            }
+            int half = height / 2;
+            invokeAll(
+                    new CopyTask(src, srcStride, srcX, srcY, dst, dstStride, dstX, dstY, width, half),
+                    new CopyTask(src, srcStride, srcX, srcY + half, dst, dstStride, dstX, dstY + half, width, height - half)
+            );
+        }
+    }
+}
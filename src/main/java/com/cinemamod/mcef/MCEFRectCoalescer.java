@@ -0,0 +1,145 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the dirty rectangles of a paint so that fewer, larger uploads are made.
+ * <p>
+ * Two rectangles are merged when their bounding box wastes at most {@link #getMaxWaste()} of its area,
+ * i.e. when the pixels in the bounding box that are in neither rectangle are a small enough fraction.
+ * Overlapping or adjacent rectangles that line up waste nothing and are always merged.
+ * If the merged rectangles end up covering more than {@link #getFullFrameThreshold()} of the frame,
+ * a single full frame rectangle is returned instead.
+ */
+public class MCEFRectCoalescer {
+    private double maxWaste;
+    private double fullFrameThreshold;
+
+    private long rectsIn = 0;
+    private long rectsOut = 0;
+
+    public MCEFRectCoalescer(double maxWaste, double fullFrameThreshold) {
+        this.maxWaste = maxWaste;
+        this.fullFrameThreshold = fullFrameThreshold;
+    }
+
+    public double getMaxWaste() {
+        return maxWaste;
+    }
+
+    /**
+     * @param maxWaste the fraction, from 0 to 1, of a merged bounding box that may be made of pixels
+     *                 that weren't dirty
+     */
+    public void setMaxWaste(double maxWaste) {
+        this.maxWaste = maxWaste;
+    }
+
+    public double getFullFrameThreshold() {
+        return fullFrameThreshold;
+    }
+
+    /**
+     * @param fullFrameThreshold the fraction, from 0 to 1, of the frame that has to be dirty before
+     *                           the whole frame is uploaded at once; anything above 1 disables this
+     */
+    public void setFullFrameThreshold(double fullFrameThreshold) {
+        this.fullFrameThreshold = fullFrameThreshold;
+    }
+
+    /**
+     * @return the total amount of rectangles given to {@link #coalesce(Rectangle[], int, int)}
+     */
+    public long getRectsIn() {
+        return rectsIn;
+    }
+
+    /**
+     * @return the total amount of rectangles returned by {@link #coalesce(Rectangle[], int, int)}
+     */
+    public long getRectsOut() {
+        return rectsOut;
+    }
+
+    /**
+     * Merges dirty rectangles, clipping them to the frame.
+     *
+     * @param dirtyRects the dirty rectangles reported by CEF, left untouched
+     * @param width      the width of the frame
+     * @param height     the height of the frame
+     * @return the rectangles to upload
+     */
+    public Rectangle[] coalesce(Rectangle[] dirtyRects, int width, int height) {
+        rectsIn += dirtyRects.length;
+
+        Rectangle frame = new Rectangle(0, 0, width, height);
+        List<Rectangle> rects = new ArrayList<>(dirtyRects.length);
+        for (Rectangle dirtyRect : dirtyRects) {
+            Rectangle clipped = dirtyRect.intersection(frame);
+            if (!clipped.isEmpty()) rects.add(clipped);
+        }
+
+        // Keep merging until no pair is worth merging, a merge can make a previously rejected pair worth it
+        boolean merged = true;
+        while (merged && rects.size() > 1) {
+            merged = false;
+            for (int i = 0; i < rects.size() && !merged; i++) {
+                for (int j = i + 1; j < rects.size(); j++) {
+                    if (shouldMerge(rects.get(i), rects.get(j))) {
+                        rects.set(i, rects.get(i).union(rects.remove(j)));
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        long dirtyArea = 0;
+        for (Rectangle rect : rects)
+            dirtyArea += area(rect);
+
+        Rectangle[] result;
+        if (rects.size() > 1 && dirtyArea >= fullFrameThreshold * area(frame)) {
+            result = new Rectangle[]{frame};
+        } else {
+            result = rects.toArray(new Rectangle[0]);
+        }
+
+        rectsOut += result.length;
+        return result;
+    }
+
+    private boolean shouldMerge(Rectangle a, Rectangle b) {
+        Rectangle bounds = a.union(b);
+        long covered = area(a) + area(b) - area(a.intersection(b));
+        long waste = area(bounds) - covered;
+        return waste <= maxWaste * area(bounds);
+    }
+
+    private static long area(Rectangle rect) {
+        if (rect.isEmpty()) return 0;
+        return (long) rect.width * rect.height;
+    }
+}
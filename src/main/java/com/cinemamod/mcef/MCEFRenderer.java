@@ -21,55 +21,740 @@
 package com.cinemamod.mcef;
 
 import com.mojang.blaze3d.systems.RenderSystem;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
 
+import java.awt.*;
 import java.nio.ByteBuffer;
 
-import static org.lwjgl.opengl.GL12.*;
+import static org.lwjgl.opengl.GL30.*;
 
 public class MCEFRenderer {
+    /**
+     * The most render frames between mip level updates when under load, see {@link MCEFSettings#getMipmapInterval()}.
+     */
+    public static final int MAX_MIPMAP_INTERVAL = 16;
+    /**
+     * Frames taking longer than this count as being under load, and make mip level updates less frequent.
+     */
+    private static final long LOADED_FRAME_NANOS = 1_000_000_000L / 30;
+
     private final boolean transparent;
     private final int[] textureID = new int[1];
+    /**
+     * Staging ring for asynchronous uploads, null when uploading straight from the CEF buffer.
+     */
+    private MCEFPixelBufferRing pixelBufferRing;
+    /**
+     * Upload timings, in nanoseconds. See {@link #getLastUploadNanos()} and {@link #getLastStallNanos()}.
+     */
+    private long paintStart = 0;
+    private long lastUploadNanos = 0, lastStallNanos = 0;
+    private long totalUploadNanos = 0, totalStallNanos = 0;
+    private long paintCount = 0;
+    private long bytesUploaded = 0;
+    /**
+     * The last render frame the texture was asked for, see {@link #getTextureID()}.
+     */
+    private long lastSampledFrame = 0;
+    /**
+     * The size of the browser, and of the main texture's storage which can be larger, see {@link MCEFHeadroom}.
+     */
+    private int width = 0, height = 0;
+    private int textureWidth = 0, textureHeight = 0;
+    private long textureAllocations = 0;
+
+    // Popups are uploaded to their own texture and copied into the main texture on the GPU,
+    // the pixels they cover are kept in the backing texture to restore them when the popup goes away
+    private int popupTextureID = 0;
+    private int backingTextureID = 0;
+    private int copyFramebufferID = 0;
+    /**
+     * The read framebuffer bound before the first copy since the last {@link #restoreReadFramebuffer()}, -1 if none.
+     * Copies within a paint only look it up once.
+     */
+    private int previousReadFramebuffer = -1;
+    private boolean painting = false;
+    private int popupWidth = 0, popupHeight = 0;
+    private int backingWidth = 0, backingHeight = 0;
+    /**
+     * Where the popup is composited into the main texture, in view coordinates, null if it isn't.
+     */
+    private Rectangle popupBounds;
+    /**
+     * The tiles holding the browser's pixels instead of the main texture, null unless tiled.
+     */
+    private MCEFTileGrid tiles;
+
+    // With mipmaps, the mip levels of the part of the browser that changed are regenerated on the GPU by
+    // blitting each level into the next, at most once every mipmapInterval frames
+    /**
+     * Whether the next full paint should let go of storage larger than it needs, see {@link #compact()}.
+     */
+    private boolean compact = false;
+
+    private boolean mipmaps = false;
+    private Rectangle mipmapDirty;
+    private int mipFramebufferID = 0;
+    private int mipmapInterval = 1;
+    private long lastMipmapFrame = 0;
+    private long mipmapUpdates = 0;
 
     protected MCEFRenderer(boolean transparent) {
         this.transparent = transparent;
     }
 
     public void initialize() {
-        textureID[0] = glGenTextures();
-        RenderSystem.bindTexture(textureID[0]);
-        RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        RenderSystem.bindTexture(0);
+        textureID[0] = createTexture();
+
+        if (MCEF.getSettings().isUsingAsyncUpload()) {
+            if (MCEFPixelBufferRing.isSupported()) pixelBufferRing = new MCEFPixelBufferRing();
+            else MCEF.getLogger().info("Persistent pixel buffers are not supported, using synchronous uploads");
+        }
     }
 
+    /**
+     * Mods should call this every frame they draw the browser, as it also marks the texture as sampled
+     * for that frame. Browsers whose texture hasn't been sampled for a while can be throttled,
+     * see {@link MCEFBrowser#useFrameRateGovernor(boolean)}.
+     *
+     * @return the GL texture holding the browser's pixels, unused while {@link #isTiled() tiled}
+     */
     public int getTextureID() {
+        lastSampledFrame = MCEF.getRenderFrame();
         return textureID[0];
     }
 
+    /**
+     * Browsers larger than the biggest texture the GPU supports, or all browsers with
+     * {@link MCEFSettings#setUseTiledTextures(boolean)}, are split over a grid of tiles instead of
+     * the texture from {@link #getTextureID()}. Marks the tiles as sampled, like {@link #getTextureID()}.
+     *
+     * @return the tiles holding the browser's pixels, null unless tiled
+     */
+    public MCEFTileGrid getTiles() {
+        lastSampledFrame = MCEF.getRenderFrame();
+        return tiles;
+    }
+
+    public boolean isTiled() {
+        return tiles != null;
+    }
+
+    /**
+     * @return the last render frame the texture was asked for with {@link #getTextureID()} or {@link #getTiles()}
+     */
+    public long getLastSampledFrame() {
+        return lastSampledFrame;
+    }
+
+    /**
+     * The popup texture holds the last popup, e.g. the list of a select element, as CEF painted it.
+     * Its top left corner goes at {@link MCEFBrowser#getPopupBounds()}.
+     *
+     * @return the GL texture holding the popup's pixels, 0 if no popup was ever painted
+     */
+    public int getPopupTextureID() {
+        return popupTextureID;
+    }
+
+    /**
+     * @return whether the texture has been created, without marking it as sampled
+     */
+    public boolean isInitialized() {
+        return textureID[0] != 0;
+    }
+
     public boolean isTransparent() {
         return transparent;
     }
 
+    /**
+     * @return whether texture uploads are staged through a ring of pixel buffers instead of
+     * being copied synchronously from the CEF buffer by the driver
+     */
+    public boolean isAsyncUpload() {
+        return pixelBufferRing != null;
+    }
+
+    /**
+     * Time the render thread spent uploading the last paint, in nanoseconds.
+     */
+    public long getLastUploadNanos() {
+        return lastUploadNanos;
+    }
+
+    /**
+     * Time the render thread was blocked during the last paint, in nanoseconds.
+     * With synchronous uploads this is the whole upload, since the driver copies the pixels before returning.
+     * With asynchronous uploads this is only the time spent waiting for a pixel buffer to be free again.
+     */
+    public long getLastStallNanos() {
+        return lastStallNanos;
+    }
+
+    public long getTotalUploadNanos() {
+        return totalUploadNanos;
+    }
+
+    public long getTotalStallNanos() {
+        return totalStallNanos;
+    }
+
+    public long getPaintCount() {
+        return paintCount;
+    }
+
+    /**
+     * @return the width of the browser's pixels in the texture
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the browser's pixels in the texture
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The texture can be larger than the browser when {@link MCEFSettings#setStorageHeadroom(MCEFHeadroom) headroom}
+     * is used, with the browser's pixels at its top left. Mods drawing the texture should use this as the
+     * right texture coordinate instead of 1. Always 1 while {@link #isTiled() tiled}.
+     *
+     * @return the texture coordinate of the browser's right edge
+     */
+    public float getMaxU() {
+        return textureWidth == 0 || tiles != null ? 1 : (float) width / textureWidth;
+    }
+
+    /**
+     * @return the texture coordinate of the browser's bottom edge, see {@link #getMaxU()}
+     */
+    public float getMaxV() {
+        return textureHeight == 0 || tiles != null ? 1 : (float) height / textureHeight;
+    }
+
+    public boolean usingMipmaps() {
+        return mipmaps;
+    }
+
+    /**
+     * @return how many times mip levels were updated, not counting full regenerations after a full paint
+     */
+    public long getMipmapUpdates() {
+        return mipmapUpdates;
+    }
+
+    /**
+     * @return the current amount of render frames between mip level updates, higher under load
+     */
+    public int getMipmapInterval() {
+        return mipmapInterval;
+    }
+
+    /**
+     * @return how many times storage was allocated for the main texture, usually because of a resize
+     */
+    public long getTextureAllocations() {
+        return textureAllocations;
+    }
+
+    /**
+     * An estimate of the GPU memory used by the browser's textures and pixel buffers, assuming 4 bytes per pixel
+     * and a third more for mip levels. Drivers may use more, e.g. for alignment.
+     *
+     * @return the estimated amount of GPU memory used, in bytes
+     */
+    public long getGpuBytes() {
+        long main = tiles != null
+                ? (long) tiles.getColumns() * tiles.getRows() * tiles.getTileSize() * tiles.getTileSize() * 4
+                : (long) textureWidth * textureHeight * 4;
+        if (mipmaps) main += main / 3;
+        long popup = (long) popupWidth * popupHeight * 4 + (long) backingWidth * backingHeight * 4;
+        MCEFPixelBufferRing ring = pixelBufferRing;
+        return main + popup + (ring != null ? ring.getBytes() : 0);
+    }
+
+    /**
+     * @return the total amount of pixel data uploaded to the texture, in bytes
+     */
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
     protected void cleanup() {
-        if (textureID[0] != 0) {
-            glDeleteTextures(textureID[0]);
-            textureID[0] = 0;
+        textureID[0] = deleteTexture(textureID[0]);
+        textureWidth = textureHeight = 0;
+        if (tiles != null) {
+            tiles.delete();
+            tiles = null;
+        }
+        mipmapDirty = null;
+        if (mipFramebufferID != 0) {
+            glDeleteFramebuffers(mipFramebufferID);
+            mipFramebufferID = 0;
+        }
+        popupTextureID = deleteTexture(popupTextureID);
+        backingTextureID = deleteTexture(backingTextureID);
+        popupWidth = popupHeight = backingWidth = backingHeight = 0;
+        popupBounds = null;
+        if (copyFramebufferID != 0) {
+            glDeleteFramebuffers(copyFramebufferID);
+            copyFramebufferID = 0;
         }
+        if (pixelBufferRing != null) {
+            pixelBufferRing.delete();
+            pixelBufferRing = null;
+        }
+    }
+
+    /**
+     * Makes the next full paint reallocate the texture and pixel buffer ring if they are larger than it needs,
+     * instead of reusing them within the {@link MCEFSettings#getStorageHeadroom() headroom}.
+     * Used when the browser is downscaled to save memory.
+     */
+    protected void compact() {
+        compact = true;
+    }
+
+    /**
+     * Drops the browser's pixels, leaving a single transparent pixel until the next full paint.
+     * Used when a browser is reused for another page, so the previous one never shows.
+     */
+    protected void clear() {
+        if (textureID[0] == 0) return;
+        if (tiles != null) {
+            tiles.delete();
+            tiles = null;
+        }
+        mipmapDirty = null;
+        popupBounds = null;
+        ByteBuffer pixel = MemoryUtil.memCalloc(4);
+        RenderSystem.bindTexture(textureID[0]);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, pixel);
+        MemoryUtil.memFree(pixel);
+        textureWidth = textureHeight = 1;
+        width = height = 0;
+        textureAllocations++;
+    }
+
+    /**
+     * Marks the start of a paint, used to time uploads.
+     */
+    protected void beginPaint() {
+        paintStart = System.nanoTime();
+        painting = true;
+    }
+
+    /**
+     * Submits all uploads issued since {@link #beginPaint()} and records how long they took.
+     */
+    protected void endPaint() {
+        painting = false;
+        restoreReadFramebuffer();
+        long stall;
+        if (pixelBufferRing != null) {
+            pixelBufferRing.submit();
+            stall = pixelBufferRing.takeStallNanos();
+        } else {
+            stall = System.nanoTime() - paintStart;
+        }
+
+        lastUploadNanos = System.nanoTime() - paintStart;
+        lastStallNanos = stall;
+        totalUploadNanos += lastUploadNanos;
+        totalStallNanos += lastStallNanos;
+        paintCount++;
     }
 
     protected void onPaint(ByteBuffer buffer, int width, int height) {
         if (textureID[0] == 0) return;
         if (transparent) RenderSystem.enableBlend();
         RenderSystem.bindTexture(textureID[0]);
-        RenderSystem.pixelStore(GL_UNPACK_ROW_LENGTH, width);
-        RenderSystem.pixelStore(GL_UNPACK_SKIP_PIXELS, 0);
-        RenderSystem.pixelStore(GL_UNPACK_SKIP_ROWS, 0);
+
+        MCEFHeadroom headroom = MCEF.getSettings().getStorageHeadroom();
+        boolean shrink = compact;
+        compact = false;
+        if (pixelBufferRing != null && !pixelBufferRing.ensureCapacity(headroom.grow(width * height * 4, Integer.MAX_VALUE), shrink))
+            pixelBufferRing = null;
+        this.width = width;
+        this.height = height;
+
+        int maxSize = RenderSystem.maxSupportedTextureSize();
+        if (MCEF.getSettings().isUsingTiledTextures() || width > maxSize || height > maxSize) {
+            if (tiles == null) {
+                tiles = new MCEFTileGrid(Math.min(MCEF.getSettings().getTileSize(), maxSize));
+                // Keep the texture around for getTextureID(), without its storage
+                allocateTexture(1, 1);
+            }
+            tiles.resize(width, height);
+        } else {
+            if (tiles != null) {
+                tiles.delete();
+                tiles = null;
+            }
+            // Reuse the storage when the new size fits, the browser's pixels stay at the top left
+            int grownWidth = headroom.grow(width, maxSize), grownHeight = headroom.grow(height, maxSize);
+            if (!headroom.fits(width, textureWidth) || !headroom.fits(height, textureHeight)
+                    || !headroom.fits((long) width * height, (long) textureWidth * textureHeight)
+                    || (shrink && (long) grownWidth * grownHeight < (long) textureWidth * textureHeight)) {
+                allocateTexture(grownWidth, grownHeight);
+            }
+        }
+        onPaint(buffer, width, 0, 0, 0, 0, width, height);
+
+        // The whole texture was replaced, including what was under the popup
+        if (popupBounds != null) {
+            Rectangle bounds = popupBounds;
+            popupBounds = null;
+            showPopup(bounds);
+        }
+
+        // Storage may have been reallocated without mip levels, which leaves the texture incomplete until they exist
+        if (mipmaps) generateMipmaps();
+    }
+
+    private void allocateTexture(int width, int height) {
+        RenderSystem.bindTexture(textureID[0]);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0,
-                GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, buffer);
+                GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, (ByteBuffer) null);
+        textureWidth = width;
+        textureHeight = height;
+        textureAllocations++;
     }
 
     protected void onPaint(ByteBuffer buffer, int x, int y, int width, int height) {
         glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, width, height, GL_BGRA,
                 GL_UNSIGNED_INT_8_8_8_8_REV, buffer);
     }
+
+    /**
+     * Uploads a rectangle of pixels to the texture, setting up the unpack state as needed.
+     *
+     * @param buffer      the pixels to upload
+     * @param bufferWidth the width in pixels of a row in the buffer
+     * @param srcX        the x position of the rectangle in the buffer
+     * @param srcY        the y position of the rectangle in the buffer
+     * @param dstX        the x position to upload to in the texture
+     * @param dstY        the y position to upload to in the texture
+     * @param width       the width of the rectangle
+     * @param height      the height of the rectangle
+     */
+    protected void onPaint(ByteBuffer buffer, int bufferWidth, int srcX, int srcY, int dstX, int dstY, int width, int height) {
+        if (textureID[0] == 0) return;
+        if (transparent) RenderSystem.enableBlend();
+        markMipmapsDirty(new Rectangle(dstX, dstY, width, height));
+        forEachMainTexture(new Rectangle(dstX, dstY, width, height), (texture, part, tileX, tileY) ->
+                upload(texture, buffer, bufferWidth, srcX + part.x - dstX, srcY + part.y - dstY,
+                        part.x - tileX, part.y - tileY, part.width, part.height));
+    }
+
+    /**
+     * Uploads the dirty rectangles of a popup paint to the popup texture, reallocating it when the popup's size changed.
+     * Doesn't touch the main texture, see {@link #showPopup(Rectangle)} and {@link #compositePopup(Rectangle)}.
+     *
+     * @param buffer     the popup's pixels
+     * @param width      the width of the popup
+     * @param height     the height of the popup
+     * @param dirtyRects the rectangles to upload, relative to the popup
+     */
+    protected void onPopupPaint(ByteBuffer buffer, int width, int height, Rectangle[] dirtyRects) {
+        if (textureID[0] == 0) return;
+        if (popupTextureID == 0) popupTextureID = createTexture();
+        if (width != popupWidth || height != popupHeight) {
+            RenderSystem.bindTexture(popupTextureID);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0,
+                    GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, (ByteBuffer) null);
+            popupWidth = width;
+            popupHeight = height;
+        }
+        for (Rectangle rect : dirtyRects)
+            upload(popupTextureID, buffer, width, rect.x, rect.y, rect.x, rect.y, rect.width, rect.height);
+    }
+
+    /**
+     * Copies the popup into the main texture at the given position, keeping what was there to restore it
+     * through {@link #hidePopup()}. Replaces any popup that was already shown.
+     *
+     * @param bounds where the popup goes, in view coordinates
+     */
+    protected void showPopup(Rectangle bounds) {
+        hidePopup();
+        if (textureID[0] == 0 || popupTextureID == 0 || !isPopupCompositingSupported()) return;
+
+        if (backingTextureID == 0) backingTextureID = createTexture();
+        if (backingWidth != popupWidth || backingHeight != popupHeight) {
+            RenderSystem.bindTexture(backingTextureID);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, popupWidth, popupHeight, 0,
+                    GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, (ByteBuffer) null);
+            backingWidth = popupWidth;
+            backingHeight = popupHeight;
+        }
+
+        popupBounds = new Rectangle(bounds);
+        Rectangle visible = getVisiblePopup();
+        saveUnderPopup(visible);
+        copyToMain(popupTextureID, visible);
+        if (!painting) restoreReadFramebuffer();
+    }
+
+    /**
+     * Copies part of the popup into the main texture again, after a popup paint.
+     *
+     * @param dirtyRect the part of the popup to copy, relative to the popup
+     */
+    protected void compositePopup(Rectangle dirtyRect) {
+        if (popupBounds == null) return;
+        Rectangle rect = new Rectangle(dirtyRect);
+        rect.translate(popupBounds.x, popupBounds.y);
+        copyToMain(popupTextureID, rect.intersection(getVisiblePopup()));
+        if (!painting) restoreReadFramebuffer();
+    }
+
+    /**
+     * Puts the popup back on top of a part of the main texture that was just uploaded,
+     * after keeping the new pixels to restore them later.
+     *
+     * @param dirtyRect the part of the main texture that was uploaded, in view coordinates
+     */
+    protected void updatePopup(Rectangle dirtyRect) {
+        if (popupBounds == null) return;
+        Rectangle rect = dirtyRect.intersection(getVisiblePopup());
+        saveUnderPopup(rect);
+        copyToMain(popupTextureID, rect);
+        if (!painting) restoreReadFramebuffer();
+    }
+
+    /**
+     * Restores the pixels under the popup, if it is shown.
+     */
+    protected void hidePopup() {
+        if (popupBounds == null) return;
+        copyToMain(backingTextureID, getVisiblePopup());
+        popupBounds = null;
+        if (!painting) restoreReadFramebuffer();
+    }
+
+    /**
+     * @return the part of the popup that is within the main texture and has been painted, in view coordinates
+     */
+    private Rectangle getVisiblePopup() {
+        Rectangle painted = new Rectangle(popupBounds.x, popupBounds.y,
+                Math.min(popupBounds.width, popupWidth), Math.min(popupBounds.height, popupHeight));
+        return painted.intersection(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Copies a rectangle of the main texture to the same place in the backing texture.
+     */
+    private void saveUnderPopup(Rectangle rect) {
+        forEachMainTexture(rect, (texture, part, tileX, tileY) ->
+                copy(texture, part.x - tileX, part.y - tileY,
+                        backingTextureID, part.x - popupBounds.x, part.y - popupBounds.y, part.width, part.height));
+    }
+
+    /**
+     * Copies a rectangle of the popup or backing texture to the same place in the main texture.
+     */
+    private void copyToMain(int texture, Rectangle rect) {
+        markMipmapsDirty(rect);
+        forEachMainTexture(rect, (mainTexture, part, tileX, tileY) ->
+                copy(texture, part.x - popupBounds.x, part.y - popupBounds.y,
+                        mainTexture, part.x - tileX, part.y - tileY, part.width, part.height));
+    }
+
+    /**
+     * Calls the consumer for every part of a rectangle that falls in a single texture, the main texture or a tile.
+     *
+     * @param rect the rectangle, in view coordinates
+     */
+    private void forEachMainTexture(Rectangle rect, MCEFTileGrid.TileConsumer consumer) {
+        if (tiles != null) tiles.forEachTile(rect, consumer);
+        else if (!rect.isEmpty()) consumer.accept(textureID[0], rect, 0, 0);
+    }
+
+    /**
+     * @return whether popups can be composited on the GPU, which copies between textures through framebuffers.
+     * Must be called on the render thread.
+     */
+    public static boolean isPopupCompositingSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL30 || caps.GL_ARB_framebuffer_object;
+    }
+
+    /**
+     * Copies between textures on the GPU by reading from the source through a framebuffer.
+     * The read framebuffer stays bound until {@link #restoreReadFramebuffer()}.
+     */
+    private void copy(int srcTexture, int srcX, int srcY, int dstTexture, int dstX, int dstY, int width, int height) {
+        if (copyFramebufferID == 0) copyFramebufferID = glGenFramebuffers();
+        if (previousReadFramebuffer < 0) {
+            previousReadFramebuffer = glGetInteger(GL_READ_FRAMEBUFFER_BINDING);
+            glBindFramebuffer(GL_READ_FRAMEBUFFER, copyFramebufferID);
+        }
+        glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, srcTexture, 0);
+        RenderSystem.bindTexture(dstTexture);
+        glCopyTexSubImage2D(GL_TEXTURE_2D, 0, dstX, dstY, srcX, srcY, width, height);
+    }
+
+    /**
+     * Binds the read framebuffer that was bound before the copies since the last call, if there were any.
+     */
+    private void restoreReadFramebuffer() {
+        if (previousReadFramebuffer < 0) return;
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, previousReadFramebuffer);
+        previousReadFramebuffer = -1;
+    }
+
+    /**
+     * Enables or disables mip levels for the browser's textures, see {@link MCEFBrowser#useMipmaps(boolean)}.
+     */
+    protected void useMipmaps(boolean mipmaps) {
+        if (this.mipmaps == mipmaps) return;
+        this.mipmaps = mipmaps;
+        mipmapDirty = null;
+        if (width == 0 || height == 0) return;
+
+        if (mipmaps) {
+            generateMipmaps();
+        } else {
+            forEachMainTexture(new Rectangle(0, 0, width, height), (texture, part, tileX, tileY) -> {
+                RenderSystem.bindTexture(texture);
+                RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            });
+        }
+    }
+
+    /**
+     * Called once per render frame, updates the mip levels of what changed since the last update if it is time to.
+     * Updates are skipped while the texture isn't sampled, and get further apart under load.
+     *
+     * @param frame the current render frame, see {@link MCEF#getRenderFrame()}
+     */
+    protected void updateMipmaps(long frame) {
+        if (!mipmaps || mipmapDirty == null || textureID[0] == 0) return;
+        if (frame - lastSampledFrame > 1 || frame - lastMipmapFrame < mipmapInterval) return;
+
+        int minInterval = Math.max(1, MCEF.getSettings().getMipmapInterval());
+        boolean loaded = MCEF.getLastFrameNanos() > LOADED_FRAME_NANOS || MCEF.getUploadScheduler().getDeferredBytes() > 0;
+        if (loaded) mipmapInterval = Math.min(MAX_MIPMAP_INTERVAL, mipmapInterval * 2);
+        else mipmapInterval = mipmapInterval / 2;
+        mipmapInterval = Math.max(minInterval, mipmapInterval);
+
+        int previousRead = glGetInteger(GL_READ_FRAMEBUFFER_BINDING);
+        int previousDraw = glGetInteger(GL_DRAW_FRAMEBUFFER_BINDING);
+        boolean scissor = glIsEnabled(GL_SCISSOR_TEST);
+        if (scissor) glDisable(GL_SCISSOR_TEST);
+        if (copyFramebufferID == 0) copyFramebufferID = glGenFramebuffers();
+        if (mipFramebufferID == 0) mipFramebufferID = glGenFramebuffers();
+
+        int size = tiles != null ? tiles.getTileSize() : 0;
+        forEachMainTexture(mipmapDirty, (texture, part, tileX, tileY) -> {
+            Rectangle rect = new Rectangle(part);
+            rect.translate(-tileX, -tileY);
+            downsample(texture, rect, tiles != null ? size : textureWidth, tiles != null ? size : textureHeight);
+        });
+
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, previousRead);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, previousDraw);
+        if (scissor) glEnable(GL_SCISSOR_TEST);
+
+        mipmapDirty = null;
+        lastMipmapFrame = frame;
+        mipmapUpdates++;
+    }
+
+    private void markMipmapsDirty(Rectangle rect) {
+        if (!mipmaps || rect.isEmpty()) return;
+        mipmapDirty = mipmapDirty == null ? new Rectangle(rect) : mipmapDirty.union(rect);
+    }
+
+    /**
+     * Generates every mip level of every texture from scratch, and switches them to mipmapped filtering.
+     */
+    private void generateMipmaps() {
+        forEachMainTexture(new Rectangle(0, 0, width, height), (texture, part, tileX, tileY) -> {
+            RenderSystem.bindTexture(texture);
+            glGenerateMipmap(GL_TEXTURE_2D);
+            RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        });
+        mipmapDirty = null;
+    }
+
+    /**
+     * Regenerates the part of each mip level covering a rectangle of the base level, by blitting every
+     * level into the next at half the size with linear filtering, which averages 2x2 blocks of pixels.
+     *
+     * @param rect the rectangle of the base level, in texture coordinates
+     */
+    private void downsample(int texture, Rectangle rect, int textureWidth, int textureHeight) {
+        int x0 = rect.x, y0 = rect.y, x1 = rect.x + rect.width, y1 = rect.y + rect.height;
+        int levelWidth = textureWidth, levelHeight = textureHeight;
+        for (int level = 1; levelWidth > 1 || levelHeight > 1; level++) {
+            // Align to whole 2x2 blocks, so every pixel of the next level gets all of its source pixels
+            x0 &= ~1;
+            y0 &= ~1;
+            x1 = Math.min(x1 + (x1 & 1), levelWidth);
+            y1 = Math.min(y1 + (y1 & 1), levelHeight);
+            int nextWidth = Math.max(1, levelWidth / 2), nextHeight = Math.max(1, levelHeight / 2);
+            int dx0 = x0 / 2, dy0 = y0 / 2;
+            int dx1 = Math.min(Math.max(dx0 + 1, x1 / 2), nextWidth), dy1 = Math.min(Math.max(dy0 + 1, y1 / 2), nextHeight);
+
+            glBindFramebuffer(GL_READ_FRAMEBUFFER, copyFramebufferID);
+            glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture, level - 1);
+            glBindFramebuffer(GL_DRAW_FRAMEBUFFER, mipFramebufferID);
+            glFramebufferTexture2D(GL_DRAW_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture, level);
+            glBlitFramebuffer(x0, y0, x1, y1, dx0, dy0, dx1, dy1, GL_COLOR_BUFFER_BIT, GL_LINEAR);
+
+            x0 = dx0;
+            y0 = dy0;
+            x1 = dx1;
+            y1 = dy1;
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+        }
+        // Leave the mip levels unattached, so they can be sampled
+        glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, 0, 0);
+        glFramebufferTexture2D(GL_DRAW_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, 0, 0);
+    }
+
+    static int createTexture() {
+        int texture = glGenTextures();
+        MCEFResourceTracker.onTextureCreated();
+        RenderSystem.bindTexture(texture);
+        RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        RenderSystem.bindTexture(0);
+        return texture;
+    }
+
+    /**
+     * @return 0, to be assigned to the texture's field
+     */
+    static int deleteTexture(int texture) {
+        if (texture != 0) {
+            glDeleteTextures(texture);
+            MCEFResourceTracker.onTextureDeleted();
+        }
+        return 0;
+    }
+
+    private void upload(int texture, ByteBuffer buffer, int bufferWidth, int srcX, int srcY, int dstX, int dstY, int width, int height) {
+        RenderSystem.bindTexture(texture);
+        bytesUploaded += (long) width * height * 4;
+
+        if (pixelBufferRing != null && pixelBufferRing.fits(width * height * 4)) {
+            pixelBufferRing.upload(buffer, bufferWidth, srcX, srcY, dstX, dstY, width, height);
+            return;
+        }
+
+        RenderSystem.pixelStore(GL_UNPACK_ROW_LENGTH, bufferWidth);
+        RenderSystem.pixelStore(GL_UNPACK_SKIP_PIXELS, srcX);
+        RenderSystem.pixelStore(GL_UNPACK_SKIP_ROWS, srcY);
+        onPaint(buffer, dstX, dstY, width, height);
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.server.packs.resources.ReloadableResourceManager;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.ResourceManagerReloadListener;
+import net.minecraftforge.fml.ModList;
+import net.minecraftforge.fml.loading.moddiscovery.ModFileInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * An index of the files served through {@code mod://<namespace>/<path>} URLs, which live at
+ * {@code assets/<namespace>/html/<path>} in mod files, see {@link ModScheme}.
+ * <p>
+ * The index is built on the "MCEF-ResourceIndex" thread by walking every mod file in the {@link ModList} once,
+ * and maps each path to the exact file, so lookups don't search the class loader. Paths are indexed both as they
+ * are and lower cased, the latter matching the lower cased lookups MCEF has always done.
+ * <p>
+ * The index is rebuilt, and the {@link MCEFAssetCache} emptied, whenever resources are reloaded. The previous index
+ * keeps answering until the new one is done. Until the first one is done, {@link #isReady()} is false and
+ * {@link ModScheme} falls back to the class loader.
+ */
+public final class MCEFResourceIndex implements ResourceManagerReloadListener {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "MCEF-ResourceIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile Map<String, Entry> entries;
+    private volatile long buildNanos = 0;
+
+    MCEFResourceIndex() {
+        rebuild();
+        ResourceManager resourceManager = Minecraft.getInstance().getResourceManager();
+        if (resourceManager instanceof ReloadableResourceManager)
+            ((ReloadableResourceManager) resourceManager).registerReloadListener(this);
+    }
+
+    /**
+     * @return whether an index has been built yet
+     */
+    public boolean isReady() {
+        return entries != null;
+    }
+
+    /**
+     * @return the amount of indexed paths, counting both spellings of paths that aren't lower case
+     */
+    public int getEntries() {
+        Map<String, Entry> entries = this.entries;
+        return entries == null ? 0 : entries.size();
+    }
+
+    /**
+     * @return the time the last index took to build, in nanoseconds
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * @param namespace the namespace, usually the mod ID
+     * @param path      the path within the namespace's html directory
+     * @return the indexed file, null if there is none or the index isn't ready
+     */
+    public Entry find(String namespace, String path) {
+        Map<String, Entry> entries = this.entries;
+        if (entries == null) return null;
+        Entry entry = entries.get(namespace + '/' + path);
+        if (entry == null) entry = entries.get((namespace + '/' + path).toLowerCase(Locale.US));
+        return entry;
+    }
+
+    /**
+     * Starts building a new index in the background, does nothing once MCEF shut down.
+     */
+    public void rebuild() {
+        // The reload listener can't be unregistered, so reloads keep coming after shutdown
+        if (executor.isShutdown()) return;
+        int build = generation.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                // A newer rebuild was requested in the meantime, leave it to that one
+                if (build != generation.get()) return;
+                long start = System.nanoTime();
+                Map<String, Entry> index = build();
+                if (build != generation.get()) return;
+                entries = index;
+                buildNanos = System.nanoTime() - start;
+                MCEF.getLogger().info("Indexed " + index.size() + " mod:// resources in "
+                        + buildNanos / 1_000_000 + "ms");
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Shut down in the meantime
+        }
+    }
+
+    @Override
+    public void onResourceManagerReload(ResourceManager resourceManager) {
+        if (MCEF.isInitialized()) MCEF.getAssetCache().invalidate();
+        rebuild();
+    }
+
+    private static Map<String, Entry> build() {
+        Map<String, Entry> index = new HashMap<>();
+        for (ModFileInfo modFileInfo : ModList.get().getModFiles()) {
+            Path assets = modFileInfo.getFile().findResource("assets");
+            if (assets == null || !Files.isDirectory(assets)) continue;
+            try (Stream<Path> namespaces = Files.list(assets)) {
+                namespaces.forEach(namespace -> indexNamespace(index, namespace));
+            } catch (IOException | RuntimeException e) {
+                MCEF.getLogger().warn("Could not index resources of " + modFileInfo.getFile().getFilePath(), e);
+            }
+        }
+        return index;
+    }
+
+    private static void indexNamespace(Map<String, Entry> index, Path namespace) {
+        Path html = namespace.resolve("html");
+        if (!Files.isDirectory(html)) return;
+        // Trailing slashes are kept by directory names in some file systems
+        String name = namespace.getFileName().toString().replace("/", "");
+        try (Stream<Path> files = Files.walk(html)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                StringBuilder key = new StringBuilder(name);
+                for (Path part : html.relativize(file))
+                    key.append('/').append(part.toString().replace("/", ""));
+                Entry entry = new Entry(key.toString(), file);
+                // The first mod providing a path wins, like with the class loader
+                index.putIfAbsent(entry.key, entry);
+                index.putIfAbsent(entry.key.toLowerCase(Locale.US), entry);
+            });
+        } catch (IOException e) {
+            MCEF.getLogger().warn("Could not index resources in " + html, e);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * An indexed file, found under either spelling of its path.
+     */
+    public static final class Entry {
+        private final String key;
+        private final Path file;
+
+        private Entry(String key, Path file) {
+            this.key = key;
+            this.file = file;
+        }
+
+        /**
+         * @return the path as it is spelled in the mod file, including the namespace
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+    }
+}
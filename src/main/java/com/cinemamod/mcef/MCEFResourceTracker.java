@@ -0,0 +1,312 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the GL textures and off-heap buffers owned by browsers, so that they are released as soon as a browser
+ * is closed rather than whenever the garbage collector gets to them.
+ * <p>
+ * Browsers that are garbage collected without having been closed are found through a phantom reference queue
+ * polled every frame. Their resources are released and they are listed in the {@link #getLeakReport() leak report}.
+ * Browsers whose native browser is still alive are kept reachable by CEF and are never collected, the leak report
+ * lists them as still open along with the last frame their texture was sampled on.
+ * <p>
+ * Memory is accounted per browser and in total, off-heap and estimated GPU bytes, see {@link #getTotalBytes()}.
+ */
+public final class MCEFResourceTracker {
+    /**
+     * The most leaked browsers kept in the leak report.
+     */
+    private static final int MAX_LEAKS = 64;
+
+    private static final ReferenceQueue<MCEFBrowser> QUEUE = new ReferenceQueue<>();
+    // Keeps the phantom references themselves reachable until their browser is closed or collected
+    private static final Set<Entry> ENTRIES = ConcurrentHashMap.newKeySet();
+    private static final List<String> LEAKS = Collections.synchronizedList(new ArrayList<>());
+    private static final AtomicLong LEAK_COUNT = new AtomicLong();
+    private static final AtomicLong OFF_HEAP_BYTES = new AtomicLong();
+    private static final AtomicInteger LIVE_TEXTURES = new AtomicInteger();
+
+    private MCEFResourceTracker() {
+    }
+
+    /**
+     * @return the estimated GPU memory used by every tracked browser, see {@link MCEFRenderer#getGpuBytes()}
+     */
+    public static long getGpuBytes() {
+        long bytes = 0;
+        for (Entry entry : ENTRIES)
+            bytes += entry.renderer.getGpuBytes();
+        return bytes;
+    }
+
+    /**
+     * @return the off-heap and estimated GPU memory used by MCEF, see {@link MCEFMemoryBudget}
+     */
+    public static long getTotalBytes() {
+        return getOffHeapBytes() + getGpuBytes();
+    }
+
+    /**
+     * @return the amount of bytes allocated off-heap for browser pixels, not counting CEF's own buffers
+     */
+    public static long getOffHeapBytes() {
+        return OFF_HEAP_BYTES.get();
+    }
+
+    /**
+     * @return the amount of browser textures that haven't been deleted yet
+     */
+    public static int getLiveTextures() {
+        return LIVE_TEXTURES.get();
+    }
+
+    /**
+     * @return the amount of browsers that haven't been closed or collected yet
+     */
+    public static int getTrackedBrowsers() {
+        return ENTRIES.size();
+    }
+
+    /**
+     * @return the amount of browsers that were garbage collected without having been closed
+     */
+    public static long getLeakCount() {
+        return LEAK_COUNT.get();
+    }
+
+    /**
+     * Lists the browsers that were garbage collected without having been closed, at most the last 64, followed by
+     * the browsers that are still open. Each with the URL it was created with and where it was created.
+     */
+    public static String getLeakReport() {
+        StringBuilder report = new StringBuilder();
+        List<String> leaks;
+        synchronized (LEAKS) {
+            leaks = new ArrayList<>(LEAKS);
+        }
+        report.append("Browsers garbage collected without being closed: ").append(LEAK_COUNT.get()).append('\n');
+        for (String leak : leaks)
+            report.append(leak);
+
+        List<Entry> open = new ArrayList<>(ENTRIES);
+        report.append("Browsers still open: ").append(open.size()).append('\n');
+        for (Entry entry : open)
+            report.append("last sampled on frame ").append(entry.renderer.getLastSampledFrame()).append(", ")
+                    .append(entry.describe());
+        return report.toString();
+    }
+
+    static Entry track(MCEFBrowser browser, MCEFRenderer renderer, String url) {
+        Entry entry = new Entry(browser, renderer, url);
+        ENTRIES.add(entry);
+        return entry;
+    }
+
+    static void onTextureCreated() {
+        LIVE_TEXTURES.incrementAndGet();
+    }
+
+    static void onTextureDeleted() {
+        LIVE_TEXTURES.decrementAndGet();
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()}, releases the resources of browsers that were collected without being closed.
+     */
+    static void poll() {
+        Reference<? extends MCEFBrowser> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            Entry entry = (Entry) reference;
+            if (!ENTRIES.remove(entry)) continue;
+
+            LEAK_COUNT.incrementAndGet();
+            String leak = entry.describe();
+            MCEF.getLogger().warn("A browser was garbage collected without being closed, " + leak);
+            synchronized (LEAKS) {
+                if (LEAKS.size() >= MAX_LEAKS) LEAKS.remove(0);
+                LEAKS.add(leak);
+            }
+            entry.release();
+        }
+    }
+
+    static ByteBuffer allocate(int bytes, boolean zeroed) {
+        OFF_HEAP_BYTES.addAndGet(bytes);
+        return zeroed ? MemoryUtil.memCalloc(bytes) : MemoryUtil.memAlloc(bytes);
+    }
+
+    static void free(ByteBuffer buffer) {
+        OFF_HEAP_BYTES.addAndGet(-buffer.capacity());
+        MemoryUtil.memFree(buffer);
+    }
+
+    /**
+     * The resources of a single browser. Must only be used from the render thread, except for the paint buffers.
+     */
+    static final class Entry extends PhantomReference<MCEFBrowser> {
+        private final MCEFRenderer renderer;
+        private final String url;
+        private final Throwable creation;
+        private final Set<ByteBuffer> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Queue<ByteBuffer> paintBuffers = new ConcurrentLinkedQueue<>();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong allocations = new AtomicLong();
+        private volatile boolean released = false;
+
+        private Entry(MCEFBrowser browser, MCEFRenderer renderer, String url) {
+            super(browser, QUEUE);
+            this.renderer = renderer;
+            this.url = url;
+            this.creation = new Throwable("Created here");
+        }
+
+        /**
+         * @return the amount of bytes allocated off-heap for this browser
+         */
+        long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * @return how many buffers were allocated for this browser, including paint buffers
+         */
+        long getAllocations() {
+            return allocations.get();
+        }
+
+        boolean isReleased() {
+            return released;
+        }
+
+        /**
+         * Allocates a zeroed buffer freed by {@link #free(ByteBuffer)}, or when the browser is released.
+         */
+        ByteBuffer allocate(int size) {
+            ByteBuffer buffer = MCEFResourceTracker.allocate(size, true);
+            bytes.addAndGet(size);
+            allocations.incrementAndGet();
+            buffers.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Returns a buffer of at least the given size, reusing the given one from {@link #allocate(int)} if it
+         * is large enough for the {@link MCEFSettings#getStorageHeadroom() storage headroom}, or replacing it with
+         * a new one with headroom otherwise. The returned buffer's limit is set to the size, its contents are
+         * undefined when it was reused.
+         */
+        ByteBuffer reallocate(ByteBuffer buffer, int size) {
+            MCEFHeadroom headroom = MCEF.getSettings().getStorageHeadroom();
+            if (buffer == null || !buffers.contains(buffer) || !headroom.fits(size, buffer.capacity())) {
+                free(buffer);
+                buffer = allocate(headroom.grow(size, Integer.MAX_VALUE));
+            }
+            buffer.position(0).limit(size);
+            return buffer;
+        }
+
+        /**
+         * Frees a buffer from {@link #allocate(int)}, does nothing for null or buffers that were already freed.
+         */
+        void free(ByteBuffer buffer) {
+            if (buffer == null || !buffers.remove(buffer)) return;
+            bytes.addAndGet(-buffer.capacity());
+            MCEFResourceTracker.free(buffer);
+        }
+
+        /**
+         * Takes a buffer to copy a paint into from the message pump thread, may be called from any thread.
+         * The buffer has to be handed back through {@link #recyclePaintBuffer(ByteBuffer)}.
+         */
+        ByteBuffer takePaintBuffer(int size) {
+            ByteBuffer buffer = paintBuffers.poll();
+            if (buffer != null && buffer.capacity() >= size) return buffer;
+            if (buffer != null) freePaintBuffer(buffer);
+            size = MCEF.getSettings().getStorageHeadroom().grow(size, Integer.MAX_VALUE);
+            bytes.addAndGet(size);
+            allocations.incrementAndGet();
+            return MCEFResourceTracker.allocate(size, false);
+        }
+
+        /**
+         * Keeps a buffer from {@link #takePaintBuffer(int)} for later, or frees it if the browser was released.
+         */
+        void recyclePaintBuffer(ByteBuffer buffer) {
+            if (released) freePaintBuffer(buffer);
+            else paintBuffers.add(buffer);
+        }
+
+        /**
+         * Frees the paint buffers that aren't in use.
+         */
+        void clearPaintBuffers() {
+            ByteBuffer buffer;
+            while ((buffer = paintBuffers.poll()) != null)
+                freePaintBuffer(buffer);
+        }
+
+        /**
+         * Called when the browser is closed, stops tracking it and releases its resources on the render thread.
+         * May be called from any thread.
+         */
+        void close() {
+            ENTRIES.remove(this);
+            clear();
+            MCEFBrowser.runOnRenderThread(this::release);
+        }
+
+        private void freePaintBuffer(ByteBuffer buffer) {
+            bytes.addAndGet(-buffer.capacity());
+            MCEFResourceTracker.free(buffer);
+        }
+
+        private void release() {
+            if (released) return;
+            released = true;
+            renderer.cleanup();
+            for (ByteBuffer buffer : new ArrayList<>(buffers))
+                free(buffer);
+            clearPaintBuffers();
+        }
+
+        private String describe() {
+            StringWriter writer = new StringWriter();
+            writer.append(url).append(", ");
+            creation.printStackTrace(new PrintWriter(writer));
+            return writer.toString();
+        }
+    }
+}
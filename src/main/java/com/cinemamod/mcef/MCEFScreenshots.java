@@ -0,0 +1,259 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Takes screenshots of browsers from the pixels they last painted, without reading back textures.
+ * <p>
+ * The only work done on the render thread is a single copy of the painted frame, either from the shadow buffer or
+ * from the next paint when the browser doesn't keep one. Turning that copy into an image, scaling it down and
+ * encoding it happens on a pool of worker threads. Copies are rate limited to
+ * {@link MCEFSettings#getScreenshotsPerSecond()}, and to one per frame, requests beyond that wait their turn.
+ */
+public final class MCEFScreenshots {
+    private final Queue<Request<?>> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * Requests handed to their browser that haven't finished yet.
+     */
+    private final Set<Request<?>> handedOut = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers;
+    private double tokens = 1;
+    private long lastRefill = System.nanoTime();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong(), failed = new AtomicLong();
+
+    MCEFScreenshots() {
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "MCEF-Screenshot-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the amount of screenshots waiting on the rate limit
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Queues a screenshot, may be called from any thread.
+     *
+     * @param width    the width of the screenshot, or the most it may be when fitting, 0 for the painted width
+     * @param height   the height of the screenshot, or the most it may be when fitting, 0 for the painted height
+     * @param fit      whether the screenshot is scaled down to fit in the size, keeping its aspect ratio, instead of
+     *                 scaled to exactly that size
+     * @param finisher turns the image into the result, on a worker thread
+     */
+    <T> CompletableFuture<T> request(MCEFBrowser browser, int width, int height, boolean fit, Function<BufferedImage, T> finisher) {
+        Request<T> request = new Request<>(browser, width, height, fit, finisher);
+        waiting.incrementAndGet();
+        queue.add(request);
+        return request.future;
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()} once per frame, hands at most one waiting screenshot to its browser.
+     */
+    void onRender() {
+        long now = System.nanoTime();
+        double rate = Math.max(1, MCEF.getSettings().getScreenshotsPerSecond());
+        // Allow bursts of up to a second worth of screenshots
+        tokens = Math.min(rate, tokens + (now - lastRefill) / 1e9 * rate);
+        lastRefill = now;
+        if (tokens < 1) return;
+
+        Request<?> request = queue.poll();
+        if (request == null) return;
+        waiting.decrementAndGet();
+        tokens--;
+        handedOut.add(request);
+        request.browser.snapshot(request);
+    }
+
+    /**
+     * Fails every screenshot that isn't finished, whether it is waiting on the rate limit, its browser or a worker.
+     * Browsers that still hold a request fail it when they try to finish it.
+     */
+    void shutdown() {
+        IllegalStateException shutDown = new IllegalStateException("MCEF was shut down");
+        Request<?> request;
+        while ((request = queue.poll()) != null)
+            request.fail(shutDown);
+        for (Runnable task : workers.shutdownNow())
+            if (task instanceof Finish) ((Finish) task).request.fail(shutDown);
+        for (Request<?> handed : new ArrayList<>(handedOut))
+            handed.fail(shutDown);
+    }
+
+    static BufferedImage toImage(int[] pixels, int width, int height) {
+        DirectColorModel model = (DirectColorModel) ColorModel.getRGBdefault();
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width, height, width,
+                model.getMasks(), null);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    /**
+     * Scales an image down by halving it until it is within twice the target size, then once more to the size,
+     * which keeps bilinear scaling from skipping pixels.
+     */
+    static BufferedImage scale(BufferedImage image, int width, int height) {
+        while (image.getWidth() != width || image.getHeight() != height) {
+            int stepWidth = image.getWidth() / 2 >= width ? image.getWidth() / 2 : width;
+            int stepHeight = image.getHeight() / 2 >= height ? image.getHeight() / 2 : height;
+            BufferedImage scaled = new BufferedImage(stepWidth, stepHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, stepWidth, stepHeight, null);
+            graphics.dispose();
+            image = scaled;
+        }
+        return image;
+    }
+
+    static byte[] toPng(BufferedImage image) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @return the image's pixels as tightly packed RGBA bytes, in a heap buffer
+     */
+    static ByteBuffer toRgba(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4);
+        for (int pixel : pixels)
+            buffer.putInt(pixel << 8 | pixel >>> 24);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A screenshot waiting to be taken, handed to {@link MCEFBrowser} once the rate limit allows it.
+     */
+    final class Request<T> {
+        private final MCEFBrowser browser;
+        private final int width, height;
+        private final boolean fit;
+        private final Function<BufferedImage, T> finisher;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Request(MCEFBrowser browser, int width, int height, boolean fit, Function<BufferedImage, T> finisher) {
+            this.browser = browser;
+            this.width = width;
+            this.height = height;
+            this.fit = fit;
+            this.finisher = finisher;
+            future.whenComplete((result, t) -> handedOut.remove(this));
+        }
+
+        /**
+         * Finishes the screenshot on a worker thread.
+         *
+         * @param pixels the painted frame as ARGB ints, owned by the request from now on
+         */
+        void complete(int[] pixels, int paintedWidth, int paintedHeight) {
+            try {
+                workers.execute(new Finish(this, () -> {
+                    int targetWidth = width == 0 ? paintedWidth : width;
+                    int targetHeight = height == 0 ? paintedHeight : height;
+                    if (fit) {
+                        double scale = Math.min(1, Math.min((double) targetWidth / paintedWidth, (double) targetHeight / paintedHeight));
+                        targetWidth = Math.max(1, (int) Math.round(paintedWidth * scale));
+                        targetHeight = Math.max(1, (int) Math.round(paintedHeight * scale));
+                    }
+                    BufferedImage image = scale(toImage(pixels, paintedWidth, paintedHeight), targetWidth, targetHeight);
+                    // Fails first if MCEF was shut down in the meantime
+                    if (future.complete(finisher.apply(image))) completed.incrementAndGet();
+                }));
+            } catch (RejectedExecutionException e) {
+                // Shut down after the browser was handed the request
+                fail(new IllegalStateException("MCEF was shut down", e));
+            }
+        }
+
+        void fail(Throwable t) {
+            if (future.completeExceptionally(t)) failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Finishes a screenshot on a worker, failing it if that throws. Kept apart so that the requests of tasks that
+     * never ran can be failed on shutdown.
+     */
+    private static final class Finish implements Runnable {
+        private final Request<?> request;
+        private final Runnable task;
+
+        private Finish(Request<?> request, Runnable task) {
+            this.request = request;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                request.fail(t);
+            }
+        }
+    }
+}
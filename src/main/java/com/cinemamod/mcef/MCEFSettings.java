@@ -42,12 +42,70 @@ public class MCEFSettings {
     private String downloadMirror;
     private String userAgent;
     private boolean useCache;
+    private boolean asyncUpload;
+    private double dirtyRectMaxWaste;
+    private double dirtyRectFullFrameThreshold;
+    private boolean shadowBuffer;
+    private int maxFrameRate;
+    private boolean frameRateGovernor;
+    private int idleFrames;
+    private int idleFrameRate;
+    private boolean dedicatedPumpThread;
+    private int pumpBudgetMillis;
+    private int browserPoolSize;
+    private int transparentBrowserPoolSize;
+    private int maxLiveBrowsers;
+    private long uploadBudgetBytes;
+    private int uploadBudgetMillis;
+    private boolean tiledTextures;
+    private int tileSize;
+    private int resizeDebounceFrames;
+    private MCEFHeadroom storageHeadroom;
+    private boolean renderScaleController;
+    private double minRenderScale;
+    private boolean mipmaps;
+    private int mipmapInterval;
+    private int screenshotsPerSecond;
+    private int memoryBudgetMegabytes;
+    private boolean audioCapture;
+    private int audioBufferMillis;
+    private int audioRingMillis;
+    private int assetCacheMegabytes;
 
     public MCEFSettings() {
         skipDownload = false;
         downloadMirror = "https://mcef-download.cinemamod.com";
         userAgent = null;
         useCache = true;
+        asyncUpload = false;
+        dirtyRectMaxWaste = 0.25;
+        dirtyRectFullFrameThreshold = 0.75;
+        shadowBuffer = false;
+        maxFrameRate = MCEFBrowser.DEFAULT_FRAME_RATE;
+        frameRateGovernor = false;
+        idleFrames = 60;
+        idleFrameRate = 1;
+        dedicatedPumpThread = false;
+        pumpBudgetMillis = 4;
+        browserPoolSize = 0;
+        transparentBrowserPoolSize = 0;
+        maxLiveBrowsers = 0;
+        uploadBudgetBytes = 0;
+        uploadBudgetMillis = 4;
+        tiledTextures = false;
+        tileSize = 2048;
+        resizeDebounceFrames = 2;
+        storageHeadroom = MCEFHeadroom.NONE;
+        renderScaleController = false;
+        minRenderScale = 0.25;
+        mipmaps = false;
+        mipmapInterval = 2;
+        screenshotsPerSecond = 10;
+        memoryBudgetMegabytes = 0;
+        audioCapture = false;
+        audioBufferMillis = 60;
+        audioRingMillis = 500;
+        assetCacheMegabytes = 32;
     }
 
     public boolean isSkipDownload() {
@@ -86,6 +144,380 @@ public class MCEFSettings {
         saveAsync();
     }
 
+    public boolean isUsingAsyncUpload() {
+        return asyncUpload;
+    }
+
+    /**
+     * Stage texture uploads through a ring of persistently mapped pixel buffers instead of having the
+     * driver copy from the CEF buffer synchronously. Falls back to synchronous uploads when the GPU
+     * doesn't support persistent buffer mapping. Only applies to browsers created afterwards.
+     */
+    public void setUseAsyncUpload(boolean asyncUpload) {
+        this.asyncUpload = asyncUpload;
+        saveAsync();
+    }
+
+    public double getDirtyRectMaxWaste() {
+        return dirtyRectMaxWaste;
+    }
+
+    /**
+     * The fraction of a merged dirty rectangle that may be made of pixels that weren't dirty.
+     * Only applies to browsers created afterwards, see {@link MCEFRectCoalescer}.
+     */
+    public void setDirtyRectMaxWaste(double dirtyRectMaxWaste) {
+        this.dirtyRectMaxWaste = dirtyRectMaxWaste;
+        saveAsync();
+    }
+
+    public double getDirtyRectFullFrameThreshold() {
+        return dirtyRectFullFrameThreshold;
+    }
+
+    /**
+     * The fraction of the frame that has to be dirty before the whole frame is uploaded at once.
+     * Only applies to browsers created afterwards, see {@link MCEFRectCoalescer}.
+     */
+    public void setDirtyRectFullFrameThreshold(double dirtyRectFullFrameThreshold) {
+        this.dirtyRectFullFrameThreshold = dirtyRectFullFrameThreshold;
+        saveAsync();
+    }
+
+    public boolean isUsingShadowBuffer() {
+        return shadowBuffer;
+    }
+
+    /**
+     * Whether browsers keep a full copy of their pixels by default, see {@link MCEFBrowser#useShadowBuffer(boolean)}.
+     * Only applies to browsers created afterwards.
+     */
+    public void setUseShadowBuffer(boolean shadowBuffer) {
+        this.shadowBuffer = shadowBuffer;
+        saveAsync();
+    }
+
+    public int getMaxFrameRate() {
+        return maxFrameRate;
+    }
+
+    /**
+     * The maximum frame rate browsers paint at by default, see {@link MCEFBrowser#setMaxFrameRate(int)}.
+     * Only applies to browsers created afterwards.
+     */
+    public void setMaxFrameRate(int maxFrameRate) {
+        this.maxFrameRate = maxFrameRate;
+        saveAsync();
+    }
+
+    public boolean isUsingFrameRateGovernor() {
+        return frameRateGovernor;
+    }
+
+    /**
+     * Whether browsers throttle themselves by default once their texture is no longer sampled,
+     * see {@link MCEFBrowser#useFrameRateGovernor(boolean)}. Only applies to browsers created afterwards.
+     */
+    public void setUseFrameRateGovernor(boolean frameRateGovernor) {
+        this.frameRateGovernor = frameRateGovernor;
+        saveAsync();
+    }
+
+    public int getIdleFrames() {
+        return idleFrames;
+    }
+
+    /**
+     * The amount of render frames a browser's texture has to go unsampled before the frame rate governor
+     * throttles it.
+     */
+    public void setIdleFrames(int idleFrames) {
+        this.idleFrames = idleFrames;
+        saveAsync();
+    }
+
+    public int getIdleFrameRate() {
+        return idleFrameRate;
+    }
+
+    /**
+     * The frame rate the frame rate governor throttles browsers to.
+     */
+    public void setIdleFrameRate(int idleFrameRate) {
+        this.idleFrameRate = idleFrameRate;
+        saveAsync();
+    }
+
+    public boolean isUsingDedicatedPumpThread() {
+        return dedicatedPumpThread;
+    }
+
+    /**
+     * Whether CEF is driven from its own thread instead of once per frame from the render thread,
+     * see {@link MCEFMessagePump}. Only applies after a restart, and is ignored on macOS.
+     */
+    public void setUseDedicatedPumpThread(boolean dedicatedPumpThread) {
+        this.dedicatedPumpThread = dedicatedPumpThread;
+        saveAsync();
+    }
+
+    public int getPumpBudgetMillis() {
+        return pumpBudgetMillis;
+    }
+
+    /**
+     * The most time spent running CEF's message loop per pump, in milliseconds. Once the budget is
+     * used up, remaining work waits for the next pump. A single message loop iteration can't be interrupted.
+     */
+    public void setPumpBudgetMillis(int pumpBudgetMillis) {
+        this.pumpBudgetMillis = pumpBudgetMillis;
+        saveAsync();
+    }
+
+    public int getBrowserPoolSize() {
+        return browserPoolSize;
+    }
+
+    /**
+     * The amount of idle opaque browsers kept ready for {@link MCEF#createBrowser}, see {@link MCEFBrowserPool}.
+     * Each one is a renderer process, 0 disables pooling.
+     */
+    public void setBrowserPoolSize(int browserPoolSize) {
+        this.browserPoolSize = browserPoolSize;
+        saveAsync();
+    }
+
+    public int getTransparentBrowserPoolSize() {
+        return transparentBrowserPoolSize;
+    }
+
+    /**
+     * Same as {@link #setBrowserPoolSize(int)}, for transparent browsers.
+     */
+    public void setTransparentBrowserPoolSize(int transparentBrowserPoolSize) {
+        this.transparentBrowserPoolSize = transparentBrowserPoolSize;
+        saveAsync();
+    }
+
+    public int getMaxLiveBrowsers() {
+        return maxLiveBrowsers;
+    }
+
+    /**
+     * The most browsers kept alive before the least recently used ones get hibernated,
+     * see {@link MCEFLifecycleManager}. 0 disables hibernation.
+     */
+    public void setMaxLiveBrowsers(int maxLiveBrowsers) {
+        this.maxLiveBrowsers = maxLiveBrowsers;
+        saveAsync();
+    }
+
+    public long getUploadBudgetBytes() {
+        return uploadBudgetBytes;
+    }
+
+    /**
+     * The most bytes uploaded to browser textures per frame, see {@link MCEFUploadScheduler}.
+     * 0 disables the scheduler, uploading everything as soon as it is painted.
+     */
+    public void setUploadBudgetBytes(long uploadBudgetBytes) {
+        this.uploadBudgetBytes = uploadBudgetBytes;
+        saveAsync();
+    }
+
+    public int getUploadBudgetMillis() {
+        return uploadBudgetMillis;
+    }
+
+    /**
+     * The most time spent uploading to browser textures per frame, in milliseconds, see {@link MCEFUploadScheduler}.
+     * Only applies when {@link #getUploadBudgetBytes()} is above 0.
+     */
+    public void setUploadBudgetMillis(int uploadBudgetMillis) {
+        this.uploadBudgetMillis = uploadBudgetMillis;
+        saveAsync();
+    }
+
+    public boolean isUsingTiledTextures() {
+        return tiledTextures;
+    }
+
+    /**
+     * Whether browsers are always split over a grid of tiles instead of a single texture, see {@link MCEFRenderer#getTiles()}.
+     * Browsers larger than the biggest texture the GPU supports are always tiled.
+     */
+    public void setUseTiledTextures(boolean tiledTextures) {
+        this.tiledTextures = tiledTextures;
+        saveAsync();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * The width and height of a tile in pixels, capped to the biggest texture the GPU supports.
+     * Only applies to browsers created afterwards.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+        saveAsync();
+    }
+
+    public int getResizeDebounceFrames() {
+        return resizeDebounceFrames;
+    }
+
+    /**
+     * How many render frames a browser's size has to stay the same before CEF is told about a resize,
+     * see {@link MCEFBrowser#resize(int, int)}. Resizes are always applied at least every {@link MCEFBrowser#MAX_RESIZE_DELAY} frames.
+     */
+    public void setResizeDebounceFrames(int resizeDebounceFrames) {
+        this.resizeDebounceFrames = resizeDebounceFrames;
+        saveAsync();
+    }
+
+    public MCEFHeadroom getStorageHeadroom() {
+        return storageHeadroom;
+    }
+
+    /**
+     * How much larger than needed browser textures and pixel buffers are allocated, so resizing doesn't
+     * reallocate them every time. Textures with headroom only use part of their storage, see {@link MCEFRenderer#getMaxU()}.
+     */
+    public void setStorageHeadroom(MCEFHeadroom storageHeadroom) {
+        this.storageHeadroom = storageHeadroom;
+        saveAsync();
+    }
+
+    public boolean isUsingRenderScaleController() {
+        return renderScaleController;
+    }
+
+    /**
+     * Whether browsers adjust their render scale to their size on screen by default,
+     * see {@link MCEFBrowser#useRenderScaleController(boolean)}. Only applies to browsers created afterwards.
+     */
+    public void setUseRenderScaleController(boolean renderScaleController) {
+        this.renderScaleController = renderScaleController;
+        saveAsync();
+    }
+
+    public double getMinRenderScale() {
+        return minRenderScale;
+    }
+
+    /**
+     * The lowest render scale the render scale controller goes down to, see {@link MCEFBrowser#setRenderScale(double)}.
+     */
+    public void setMinRenderScale(double minRenderScale) {
+        this.minRenderScale = minRenderScale;
+        saveAsync();
+    }
+
+    public boolean isUsingMipmaps() {
+        return mipmaps;
+    }
+
+    /**
+     * Whether browsers have mipmapped textures by default, see {@link MCEFBrowser#useMipmaps(boolean)}.
+     * Only applies to browsers created afterwards.
+     */
+    public void setUseMipmaps(boolean mipmaps) {
+        this.mipmaps = mipmaps;
+        saveAsync();
+    }
+
+    public int getMipmapInterval() {
+        return mipmapInterval;
+    }
+
+    /**
+     * The least amount of render frames between updates of a browser's mip levels. Under load, updates
+     * get further apart, up to {@link MCEFRenderer#MAX_MIPMAP_INTERVAL} frames.
+     */
+    public void setMipmapInterval(int mipmapInterval) {
+        this.mipmapInterval = mipmapInterval;
+        saveAsync();
+    }
+
+    public int getScreenshotsPerSecond() {
+        return screenshotsPerSecond;
+    }
+
+    /**
+     * The most screenshots taken per second across all browsers, see {@link MCEFBrowser#createScreenshot(boolean)}.
+     * Each one copies a whole frame on the render thread, requests beyond this wait their turn.
+     */
+    public void setScreenshotsPerSecond(int screenshotsPerSecond) {
+        this.screenshotsPerSecond = screenshotsPerSecond;
+        saveAsync();
+    }
+
+    public int getMemoryBudgetMegabytes() {
+        return memoryBudgetMegabytes;
+    }
+
+    /**
+     * The most off-heap and estimated GPU memory all browsers may use together, in megabytes, see {@link MCEFMemoryBudget}.
+     * 0 disables the budget.
+     */
+    public void setMemoryBudgetMegabytes(int memoryBudgetMegabytes) {
+        this.memoryBudgetMegabytes = memoryBudgetMegabytes;
+        saveAsync();
+    }
+
+    public boolean isAudioCapture() {
+        return audioCapture;
+    }
+
+    /**
+     * Whether browser audio is handed to {@link MCEFAudio} instead of being played by CEF itself.
+     * Applies to audio streams started after changing it.
+     */
+    public void setAudioCapture(boolean audioCapture) {
+        this.audioCapture = audioCapture;
+        saveAsync();
+    }
+
+    public int getAudioBufferMillis() {
+        return audioBufferMillis;
+    }
+
+    /**
+     * How much audio {@link MCEFAudio} keeps queued in a sink, in milliseconds.
+     * Lower values reduce latency, at the risk of underruns when the audio thread is held up.
+     */
+    public void setAudioBufferMillis(int audioBufferMillis) {
+        this.audioBufferMillis = audioBufferMillis;
+        saveAsync();
+    }
+
+    public int getAudioRingMillis() {
+        return audioRingMillis;
+    }
+
+    /**
+     * How much audio a browser can have waiting for the audio thread, in milliseconds. Packets beyond that are dropped.
+     */
+    public void setAudioRingMillis(int audioRingMillis) {
+        this.audioRingMillis = audioRingMillis;
+        saveAsync();
+    }
+
+    public int getAssetCacheMegabytes() {
+        return assetCacheMegabytes;
+    }
+
+    /**
+     * The most memory the {@link MCEFAssetCache} of assets served through {@code mod://} URLs may use, in megabytes.
+     * 0 disables the cache.
+     */
+    public void setAssetCacheMegabytes(int assetCacheMegabytes) {
+        this.assetCacheMegabytes = assetCacheMegabytes;
+        saveAsync();
+    }
+
     public void saveAsync() {
         CompletableFuture.runAsync(() -> {
             try {
@@ -110,6 +542,35 @@ public class MCEFSettings {
         properties.setProperty("download-mirror", String.valueOf(downloadMirror));
         properties.setProperty("user-agent", String.valueOf(userAgent));
         properties.setProperty("use-cache", String.valueOf(useCache));
+        properties.setProperty("async-upload", String.valueOf(asyncUpload));
+        properties.setProperty("dirty-rect-max-waste", String.valueOf(dirtyRectMaxWaste));
+        properties.setProperty("dirty-rect-full-frame-threshold", String.valueOf(dirtyRectFullFrameThreshold));
+        properties.setProperty("shadow-buffer", String.valueOf(shadowBuffer));
+        properties.setProperty("max-frame-rate", String.valueOf(maxFrameRate));
+        properties.setProperty("frame-rate-governor", String.valueOf(frameRateGovernor));
+        properties.setProperty("idle-frames", String.valueOf(idleFrames));
+        properties.setProperty("idle-frame-rate", String.valueOf(idleFrameRate));
+        properties.setProperty("dedicated-pump-thread", String.valueOf(dedicatedPumpThread));
+        properties.setProperty("pump-budget-millis", String.valueOf(pumpBudgetMillis));
+        properties.setProperty("browser-pool-size", String.valueOf(browserPoolSize));
+        properties.setProperty("transparent-browser-pool-size", String.valueOf(transparentBrowserPoolSize));
+        properties.setProperty("max-live-browsers", String.valueOf(maxLiveBrowsers));
+        properties.setProperty("upload-budget-bytes", String.valueOf(uploadBudgetBytes));
+        properties.setProperty("upload-budget-millis", String.valueOf(uploadBudgetMillis));
+        properties.setProperty("tiled-textures", String.valueOf(tiledTextures));
+        properties.setProperty("tile-size", String.valueOf(tileSize));
+        properties.setProperty("resize-debounce-frames", String.valueOf(resizeDebounceFrames));
+        properties.setProperty("storage-headroom", storageHeadroom.name());
+        properties.setProperty("render-scale-controller", String.valueOf(renderScaleController));
+        properties.setProperty("min-render-scale", String.valueOf(minRenderScale));
+        properties.setProperty("mipmaps", String.valueOf(mipmaps));
+        properties.setProperty("mipmap-interval", String.valueOf(mipmapInterval));
+        properties.setProperty("screenshots-per-second", String.valueOf(screenshotsPerSecond));
+        properties.setProperty("memory-budget-megabytes", String.valueOf(memoryBudgetMegabytes));
+        properties.setProperty("audio-capture", String.valueOf(audioCapture));
+        properties.setProperty("audio-buffer-millis", String.valueOf(audioBufferMillis));
+        properties.setProperty("audio-ring-millis", String.valueOf(audioRingMillis));
+        properties.setProperty("asset-cache-megabytes", String.valueOf(assetCacheMegabytes));
 
         try (FileOutputStream output = new FileOutputStream(file)) {
             properties.store(output, null);
@@ -134,6 +595,35 @@ public class MCEFSettings {
             downloadMirror = properties.getProperty("download-mirror");
             userAgent = properties.getProperty("user-agent");
             useCache = Boolean.parseBoolean(properties.getProperty("use-cache"));
+            asyncUpload = Boolean.parseBoolean(properties.getProperty("async-upload"));
+            dirtyRectMaxWaste = Double.parseDouble(properties.getProperty("dirty-rect-max-waste", String.valueOf(dirtyRectMaxWaste)));
+            dirtyRectFullFrameThreshold = Double.parseDouble(properties.getProperty("dirty-rect-full-frame-threshold", String.valueOf(dirtyRectFullFrameThreshold)));
+            shadowBuffer = Boolean.parseBoolean(properties.getProperty("shadow-buffer"));
+            maxFrameRate = Integer.parseInt(properties.getProperty("max-frame-rate", String.valueOf(maxFrameRate)));
+            frameRateGovernor = Boolean.parseBoolean(properties.getProperty("frame-rate-governor"));
+            idleFrames = Integer.parseInt(properties.getProperty("idle-frames", String.valueOf(idleFrames)));
+            idleFrameRate = Integer.parseInt(properties.getProperty("idle-frame-rate", String.valueOf(idleFrameRate)));
+            dedicatedPumpThread = Boolean.parseBoolean(properties.getProperty("dedicated-pump-thread"));
+            pumpBudgetMillis = Integer.parseInt(properties.getProperty("pump-budget-millis", String.valueOf(pumpBudgetMillis)));
+            browserPoolSize = Integer.parseInt(properties.getProperty("browser-pool-size", String.valueOf(browserPoolSize)));
+            transparentBrowserPoolSize = Integer.parseInt(properties.getProperty("transparent-browser-pool-size", String.valueOf(transparentBrowserPoolSize)));
+            maxLiveBrowsers = Integer.parseInt(properties.getProperty("max-live-browsers", String.valueOf(maxLiveBrowsers)));
+            uploadBudgetBytes = Long.parseLong(properties.getProperty("upload-budget-bytes", String.valueOf(uploadBudgetBytes)));
+            uploadBudgetMillis = Integer.parseInt(properties.getProperty("upload-budget-millis", String.valueOf(uploadBudgetMillis)));
+            tiledTextures = Boolean.parseBoolean(properties.getProperty("tiled-textures"));
+            tileSize = Integer.parseInt(properties.getProperty("tile-size", String.valueOf(tileSize)));
+            resizeDebounceFrames = Integer.parseInt(properties.getProperty("resize-debounce-frames", String.valueOf(resizeDebounceFrames)));
+            storageHeadroom = MCEFHeadroom.valueOf(properties.getProperty("storage-headroom", storageHeadroom.name()));
+            renderScaleController = Boolean.parseBoolean(properties.getProperty("render-scale-controller"));
+            minRenderScale = Double.parseDouble(properties.getProperty("min-render-scale", String.valueOf(minRenderScale)));
+            mipmaps = Boolean.parseBoolean(properties.getProperty("mipmaps"));
+            mipmapInterval = Integer.parseInt(properties.getProperty("mipmap-interval", String.valueOf(mipmapInterval)));
+            screenshotsPerSecond = Integer.parseInt(properties.getProperty("screenshots-per-second", String.valueOf(screenshotsPerSecond)));
+            memoryBudgetMegabytes = Integer.parseInt(properties.getProperty("memory-budget-megabytes", String.valueOf(memoryBudgetMegabytes)));
+            audioCapture = Boolean.parseBoolean(properties.getProperty("audio-capture"));
+            audioBufferMillis = Integer.parseInt(properties.getProperty("audio-buffer-millis", String.valueOf(audioBufferMillis)));
+            audioRingMillis = Integer.parseInt(properties.getProperty("audio-ring-millis", String.valueOf(audioRingMillis)));
+            assetCacheMegabytes = Integer.parseInt(properties.getProperty("asset-cache-megabytes", String.valueOf(assetCacheMegabytes)));
         } catch (Exception e) {
             // Delete and re-create the file if there was a parsing error
             if (deleteRetries++ > 20)
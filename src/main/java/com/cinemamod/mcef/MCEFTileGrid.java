@@ -0,0 +1,254 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL12.*;
+
+/**
+ * A browser's pixels split over a grid of square textures, for browsers larger than the biggest texture the
+ * GPU supports. Tile textures are {@link #getTileSize()} pixels wide and high, the ones on the right and bottom
+ * edges are only partly used, see {@link #getTileBounds(int, int)}.
+ * <p>
+ * Neighbouring tiles overlap by a pixel: every texture also holds a copy of the pixels right next to its bounds,
+ * so linear filtering at the seams blends with the neighbouring tile like a single texture would. Whatever part
+ * of a texture lies outside the browser is kept transparent, so neither filtering nor mip levels pick up
+ * uninitialized pixels.
+ * <p>
+ * Every tile is allocated at the full tile size, so resizing only allocates the tiles that were added and
+ * deletes the ones that were removed, the others keep their pixels. Must only be used from the render thread.
+ */
+public class MCEFTileGrid {
+    /**
+     * The pixels of overlap on each side of a tile.
+     */
+    private static final int BORDER = 1;
+    private static final int MIN_TILE_SIZE = 64;
+    /**
+     * How many rows of transparent pixels are uploaded at once when clearing.
+     */
+    private static final int CLEAR_ROWS = 64;
+
+    private final int tileSize;
+    /**
+     * The size of the part of the browser a tile is drawn for, its texture size without the overlap.
+     */
+    private final int step;
+    private int columns = 0, rows = 0;
+    private int width = 0, height = 0;
+    private int[] textures = new int[0];
+
+    MCEFTileGrid(int tileSize) {
+        this.tileSize = Math.max(MIN_TILE_SIZE, tileSize);
+        step = this.tileSize - 2 * BORDER;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the width of the browser covered by the grid
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the browser covered by the grid
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTexture(int column, int row) {
+        return textures[row * columns + column];
+    }
+
+    /**
+     * The part of the browser a tile is drawn for. Its pixels start a pixel into the tile's texture, after the
+     * overlap, so the tile should be drawn with texture coordinates from {@link #getMinUV()} to
+     * {@link #getMaxU(int, int)} horizontally and from {@link #getMinUV()} to {@link #getMaxV(int, int)} vertically.
+     *
+     * @return the tile's bounds, in view coordinates
+     */
+    public Rectangle getTileBounds(int column, int row) {
+        int x = column * step;
+        int y = row * step;
+        return new Rectangle(x, y, Math.min(step, width - x), Math.min(step, height - y));
+    }
+
+    /**
+     * @return the texture coordinate of the left and top edges of every tile's bounds
+     */
+    public float getMinUV() {
+        return (float) BORDER / tileSize;
+    }
+
+    /**
+     * @return the texture coordinate of the right edge of a tile's bounds
+     */
+    public float getMaxU(int column, int row) {
+        return (float) (BORDER + getTileBounds(column, row).width) / tileSize;
+    }
+
+    /**
+     * @return the texture coordinate of the bottom edge of a tile's bounds
+     */
+    public float getMaxV(int column, int row) {
+        return (float) (BORDER + getTileBounds(column, row).height) / tileSize;
+    }
+
+    /**
+     * @return the part of the browser a tile's texture holds, its bounds and the overlap, in view coordinates
+     */
+    private Rectangle getTextureBounds(int column, int row) {
+        return new Rectangle(column * step - BORDER, row * step - BORDER, tileSize, tileSize);
+    }
+
+    /**
+     * Calls the consumer for every part of a rectangle that falls in a single tile's texture. Pixels in the overlap
+     * of two tiles are given for both, so uploads keep the copies in the neighbouring tiles up to date.
+     *
+     * @param rect the rectangle, in view coordinates
+     */
+    void forEachTile(Rectangle rect, TileConsumer consumer) {
+        Rectangle clipped = rect.intersection(new Rectangle(0, 0, width, height));
+        if (clipped.isEmpty()) return;
+
+        int firstColumn = Math.max(0, clipped.x / step - 1);
+        int lastColumn = Math.min(columns - 1, (clipped.x + clipped.width - 1) / step + 1);
+        int firstRow = Math.max(0, clipped.y / step - 1);
+        int lastRow = Math.min(rows - 1, (clipped.y + clipped.height - 1) / step + 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Rectangle texture = getTextureBounds(column, row);
+                Rectangle part = clipped.intersection(texture);
+                if (!part.isEmpty()) consumer.accept(getTexture(column, row), part, texture.x, texture.y);
+            }
+        }
+    }
+
+    /**
+     * Makes the grid cover a browser of the given size, allocating and deleting tiles on the edges as needed.
+     */
+    void resize(int width, int height) {
+        int newColumns = (width + step - 1) / step;
+        int newRows = (height + step - 1) / step;
+        int[] newTextures = new int[newColumns * newRows];
+
+        for (int row = 0; row < Math.max(rows, newRows); row++) {
+            for (int column = 0; column < Math.max(columns, newColumns); column++) {
+                boolean kept = column < newColumns && row < newRows;
+                boolean existing = column < columns && row < rows;
+                if (existing && kept) newTextures[row * newColumns + column] = getTexture(column, row);
+                else if (existing) MCEFRenderer.deleteTexture(getTexture(column, row));
+                else if (kept) newTextures[row * newColumns + column] = createTile();
+            }
+        }
+
+        textures = newTextures;
+        columns = newColumns;
+        rows = newRows;
+        this.width = width;
+        this.height = height;
+        clearOutside();
+    }
+
+    void delete() {
+        for (int texture : textures)
+            MCEFRenderer.deleteTexture(texture);
+        textures = new int[0];
+        columns = rows = width = height = 0;
+    }
+
+    /**
+     * Makes the parts of the textures on the edges of the grid that lie outside the browser transparent,
+     * they are never uploaded to and may hold pixels from before a resize.
+     */
+    private void clearOutside() {
+        Rectangle browser = new Rectangle(0, 0, width, height);
+        ByteBuffer zeros = MemoryUtil.memCalloc(tileSize * CLEAR_ROWS * 4);
+        RenderSystem.pixelStore(GL_UNPACK_ROW_LENGTH, 0);
+        RenderSystem.pixelStore(GL_UNPACK_SKIP_PIXELS, 0);
+        RenderSystem.pixelStore(GL_UNPACK_SKIP_ROWS, 0);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (row != 0 && row != rows - 1 && column != 0 && column != columns - 1) continue;
+                Rectangle texture = getTextureBounds(column, row);
+                Rectangle inside = texture.intersection(browser);
+                inside.translate(-texture.x, -texture.y);
+                RenderSystem.bindTexture(getTexture(column, row));
+                // Full width strips above and below the browser, then what is left and right of it
+                clear(zeros, 0, 0, tileSize, inside.y);
+                clear(zeros, 0, inside.y + inside.height, tileSize, tileSize - inside.y - inside.height);
+                clear(zeros, 0, inside.y, inside.x, inside.height);
+                clear(zeros, inside.x + inside.width, inside.y, tileSize - inside.x - inside.width, inside.height);
+            }
+        }
+        RenderSystem.bindTexture(0);
+        MemoryUtil.memFree(zeros);
+    }
+
+    private void clear(ByteBuffer zeros, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        int chunk = Math.max(1, zeros.capacity() / (width * 4));
+        for (int row = y; row < y + height; row += chunk) {
+            glTexSubImage2D(GL_TEXTURE_2D, 0, x, row, width, Math.min(chunk, y + height - row),
+                    GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, zeros);
+        }
+    }
+
+    private int createTile() {
+        int texture = MCEFRenderer.createTexture();
+        RenderSystem.bindTexture(texture);
+        // Filtering at the edges of a tile mustn't wrap around to the other side
+        RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        RenderSystem.texParameter(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, tileSize, tileSize, 0,
+                GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, (ByteBuffer) null);
+        RenderSystem.bindTexture(0);
+        return texture;
+    }
+
+    interface TileConsumer {
+        /**
+         * @param texture the tile's texture
+         * @param part    the part of the rectangle in the tile, in view coordinates
+         * @param tileX   the x position of the tile, in view coordinates
+         * @param tileY   the y position of the tile, in view coordinates
+         */
+        void accept(int texture, Rectangle part, int tileX, int tileY);
+    }
+}
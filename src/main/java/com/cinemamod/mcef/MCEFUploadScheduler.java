@@ -0,0 +1,118 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef;
+
+import java.util.*;
+
+/**
+ * Spreads texture uploads of all browsers over several frames, so that many browsers repainting at once
+ * don't upload everything in a single frame.
+ * <p>
+ * When enabled through {@link MCEFSettings#setUploadBudgetBytes(long)}, browsers copy their dirty rectangles
+ * to a staging buffer instead of uploading them, merging them with any rectangles still waiting. Every frame,
+ * waiting rectangles are uploaded until either the byte budget or {@link MCEFSettings#getUploadBudgetMillis()}
+ * is used up; at least one rectangle is uploaded per frame so uploads always make progress.
+ * <p>
+ * Browsers waiting for more than {@link #MAX_LAG_FRAMES} frames go first, then the focused browser, then the
+ * ones nearest the camera as reported through {@link MCEFBrowser#setCameraDistance(double)}.
+ * Must only be used from the render thread.
+ */
+public final class MCEFUploadScheduler {
+    public static final int MAX_LAG_FRAMES = 10;
+
+    private final Set<MCEFBrowser> pending = new LinkedHashSet<>();
+    private long lastFrameBytes = 0;
+    private long lastFrameBudget = 0;
+
+    MCEFUploadScheduler() {
+    }
+
+    public boolean isEnabled() {
+        return MCEF.getSettings().getUploadBudgetBytes() > 0;
+    }
+
+    /**
+     * @return the amount of bytes waiting to be uploaded, across all browsers
+     */
+    public long getDeferredBytes() {
+        long bytes = 0;
+        for (MCEFBrowser browser : pending)
+            bytes += browser.getPendingUploadBytes();
+        return bytes;
+    }
+
+    /**
+     * @return the amount of browsers with uploads waiting
+     */
+    public int getPendingBrowsers() {
+        return pending.size();
+    }
+
+    /**
+     * @return the amount of bytes uploaded by the scheduler on the last frame
+     */
+    public long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    /**
+     * @return the fraction of the byte budget used on the last frame, above 1 when a single rectangle exceeded it
+     */
+    public double getBudgetUtilization() {
+        return lastFrameBudget == 0 ? 0 : (double) lastFrameBytes / lastFrameBudget;
+    }
+
+    void schedule(MCEFBrowser browser) {
+        pending.add(browser);
+    }
+
+    void cancel(MCEFBrowser browser) {
+        pending.remove(browser);
+    }
+
+    /**
+     * Called by {@link MCEF#onRender()} after CEF's message loop work, uploads as much as the budget allows.
+     */
+    void onRender(long frame) {
+        lastFrameBytes = 0;
+        lastFrameBudget = MCEF.getSettings().getUploadBudgetBytes();
+        if (pending.isEmpty()) return;
+
+        // Whatever is still waiting when scheduling gets disabled goes up at once
+        long budget = lastFrameBudget > 0 ? lastFrameBudget : Long.MAX_VALUE;
+        long deadline = System.nanoTime() + MCEF.getSettings().getUploadBudgetMillis() * 1_000_000L;
+
+        List<MCEFBrowser> order = new ArrayList<>(pending);
+        order.sort(Comparator.comparing((MCEFBrowser browser) -> browser.getUploadLagFrames() <= MAX_LAG_FRAMES)
+                .thenComparing(browser -> !browser.isFocused())
+                .thenComparingDouble(MCEFBrowser::getCameraDistance)
+                .thenComparingLong(browser -> -browser.getUploadLagFrames()));
+
+        long spent = 0;
+        for (MCEFBrowser browser : order) {
+            if (spent > 0 && (spent >= budget || (lastFrameBudget > 0 && System.nanoTime() > deadline))) break;
+            spent += browser.uploadPending(budget - spent, spent == 0);
+            if (browser.getPendingUploadBytes() == 0) pending.remove(browser);
+        }
+
+        lastFrameBytes = spent;
+    }
+}
@@ -21,7 +21,7 @@
 package com.cinemamod.mcef;
 
 import org.cef.callback.CefCallback;
-import org.cef.handler.CefResourceHandler;
+import org.cef.handler.CefDirectResourceHandler;
 import org.cef.misc.IntRef;
 import org.cef.misc.StringRef;
 import org.cef.network.CefRequest;
@@ -29,13 +29,38 @@ import org.cef.network.CefResponse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Locale;
 import java.util.logging.Logger;
 
 // https://github.com/CinemaMod/mcef/blob/master-1.19.2/src/main/java/net/montoyo/mcef/example/ModScheme.java
-public class ModScheme implements CefResourceHandler {
+public class ModScheme implements CefDirectResourceHandler {
+    /**
+     * The most bytes read from the resource at once.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final byte[] NOT_FOUND = "404 Not Found".getBytes(StandardCharsets.UTF_8);
+
     private String contentType = null;
     private InputStream is = null;
+    private byte[] chunk;
+    /**
+     * The asset being served from the {@link MCEFAssetCache}, null when streaming from {@link #is}.
+     */
+    private MCEFAssetCache.Asset asset = null;
+    /**
+     * The response served from memory, either the asset's data or the not found page, null when streaming.
+     */
+    private byte[] body = null;
+    private int bodyOffset = 0;
+    private boolean notModified = false;
+    private boolean notFound = false;
+    private long contentLength = -1;
 
     private final String url;
 
@@ -64,20 +89,88 @@ public class ModScheme implements CefResourceHandler {
             return false;
         }
 
-        // TODO: this may or may not require forge/fabric specific code?
-//        is = ModList.get().getModContainerById(mod).get().getMod().getClass().getResourceAsStream("/assets/" + mod.toLowerCase(Locale.US) + "/html/" + loc.toLowerCase());
-        is = ModScheme.class.getClassLoader().getResourceAsStream("/assets/" + mod.toLowerCase(Locale.US) + "/html/" + loc.toLowerCase(Locale.US));
-        if (is == null) {
-            LOGGER.warning("Resource " + url + " NOT found!");
-            cefCallback.cancel();
-            return false; // TODO: 404?
+        // Cached under the path the resource resolves to, however the URL spells it
+        MCEFResourceIndex index = MCEF.getResourceIndex();
+        MCEFResourceIndex.Entry entry = null;
+        String key;
+        if (index.isReady()) {
+            entry = index.find(mod, loc);
+            if (entry == null) return notFound(cefCallback);
+            key = entry.getKey();
+        } else {
+            key = mod.toLowerCase(Locale.US) + '/' + loc.toLowerCase(Locale.US);
+        }
+
+        MCEFAssetCache cache = MCEF.getAssetCache();
+        asset = cache.get(key);
+        if (asset == null) {
+            contentType = null;
+            pos = loc.lastIndexOf('.');
+            if (pos >= 0 && pos < loc.length() - 2)
+                contentType = MIMEUtil.mimeFromExtension(loc.substring(pos + 1));
+
+            try {
+                if (!open(entry, key)) return notFound(cefCallback);
+
+                if (contentLength >= 0 && cache.accepts(contentLength)) {
+                    try (InputStream input = is) {
+                        asset = MCEFAssetCache.Asset.read(input, contentLength, contentType);
+                    }
+                    is = null;
+                    cache.put(key, asset);
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Could not read resource " + url + ": " + e);
+                cancel();
+                cefCallback.cancel();
+                return false;
+            }
+        }
+
+        if (asset != null) {
+            contentType = asset.getMimeType();
+            body = asset.getData();
+            contentLength = asset.getLength();
+            notModified = asset.matches(cefRequest.getHeaderByName("If-None-Match"));
+            if (notModified) cache.onNotModified();
+        }
+
+        cefCallback.Continue();
+        return true;
+    }
+
+    /**
+     * Opens the resource from its {@link MCEFResourceIndex} entry, or through the class loader while the index is
+     * being built.
+     *
+     * @param entry the indexed file, null to go through the class loader
+     * @param key   the lower cased {@code <mod>/<path>} when going through the class loader
+     * @return false if there is no such resource
+     */
+    private boolean open(MCEFResourceIndex.Entry entry, String key) throws IOException {
+        if (entry != null) {
+            Path file = entry.getFile();
+            contentLength = Files.size(file);
+            is = Files.newInputStream(file);
+            return true;
         }
 
-        contentType = null;
-        pos = loc.lastIndexOf('.');
-        if (pos >= 0 && pos < loc.length() - 2)
-            contentType = MIMEUtil.mimeFromExtension(loc.substring(pos + 1));
+        int slash = key.indexOf('/');
+        // Class loader resource names have no leading slash
+        URL resource = ModScheme.class.getClassLoader().getResource("assets/" + key.substring(0, slash) + "/html/" + key.substring(slash + 1));
+        if (resource == null) return false;
+        URLConnection connection = resource.openConnection();
+        contentLength = connection.getContentLengthLong();
+        is = connection.getInputStream();
+        return true;
+    }
 
+    private boolean notFound(CefCallback cefCallback) {
+        LOGGER.warning("Resource " + url + " NOT found!");
+        notFound = true;
+        contentType = "text/plain";
+        body = NOT_FOUND;
+        contentLength = body.length;
         cefCallback.Continue();
         return true;
     }
@@ -95,15 +188,51 @@ public class ModScheme implements CefResourceHandler {
         if (contentType != null)
             cefResponse.setMimeType(contentType);
 
+        if (asset != null) {
+            cefResponse.setHeaderByName("ETag", asset.getETag(), true);
+            // Cached by the browser, but revalidated on every use, which costs a 304 at most
+            cefResponse.setHeaderByName("Cache-Control", "no-cache", true);
+        }
+
+        if (notFound) {
+            cefResponse.setStatus(404);
+            cefResponse.setStatusText("Not Found");
+            contentLength.set(body.length);
+            return;
+        }
+
+        if (notModified) {
+            cefResponse.setStatus(304);
+            cefResponse.setStatusText("Not Modified");
+            contentLength.set(0);
+            return;
+        }
+
         cefResponse.setStatus(200);
         cefResponse.setStatusText("OK");
-        contentLength.set(0);
+        // -1 tells CEF the length isn't known, and to read until readResponse returns false
+        contentLength.set(this.contentLength <= Integer.MAX_VALUE ? (int) this.contentLength : -1);
     }
 
     @Override
-    public boolean readResponse(byte[] output, int bytesToRead, IntRef bytesRead, CefCallback cefCallback) {
+    public boolean readResponse(ByteBuffer output, int bytesToRead, IntRef bytesRead, CefCallback cefCallback) {
+        if (body != null) {
+            int length = notModified ? 0 : Math.min(bytesToRead, body.length - bodyOffset);
+            if (length <= 0) {
+                bytesRead.set(0);
+                return false;
+            }
+            output.put(body, bodyOffset, length);
+            bodyOffset += length;
+            bytesRead.set(length);
+            return true;
+        }
+
         try {
-            int ret = is.read(output, 0, bytesToRead);
+            // Reused for the whole response, resources are only available as streams so they're copied once
+            if (chunk == null) chunk = new byte[Math.min(bytesToRead, CHUNK_SIZE)];
+            int ret = is.read(chunk, 0, Math.min(bytesToRead, chunk.length));
+            if (ret > 0) output.put(chunk, 0, ret);
             if (ret <= 0) {
                 is.close();
                 // 0 bytes read indicates to CEF/JCEF that there is no more data to read
@@ -130,7 +259,7 @@ public class ModScheme implements CefResourceHandler {
     public void cancel() {
         // attempt to free resources, just incase
         try {
-            is.close();
+            if (is != null) is.close();
         } catch (Throwable ignored) {
         }
     }
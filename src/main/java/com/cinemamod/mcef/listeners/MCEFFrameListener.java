@@ -0,0 +1,34 @@
+/*
+ *     MCEF (Minecraft Chromium Embedded Framework)
+ *     Copyright (C) 2023 CinemaMod Group
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ */
+
+package com.cinemamod.mcef.listeners;
+
+import com.cinemamod.mcef.MCEFFrame;
+
+@FunctionalInterface
+public interface MCEFFrameListener {
+    /**
+     * Called on a frame tap thread with the next frame of a browser, see {@link com.cinemamod.mcef.MCEFFrameSubscription}.
+     * The frame is released once this returns, call {@link MCEFFrame#retain()} to keep it longer.
+     *
+     * @param frame the parts of the browser that changed since the last frame given to this listener
+     */
+    void onFrame(MCEFFrame frame);
+}